@@ -2,8 +2,10 @@ package ru.ads_online;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class AdsOnlineApplication {
 
 	public static void main(String[] args) {
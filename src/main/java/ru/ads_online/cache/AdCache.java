@@ -0,0 +1,135 @@
+package ru.ads_online.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.ads_online.event.AdChangedEvent;
+import ru.ads_online.event.ChangesMissedEvent;
+import ru.ads_online.event.UserChangedEvent;
+import ru.ads_online.pojo.dto.Versioned;
+import ru.ads_online.pojo.dto.ad.ExtendedAd;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntFunction;
+
+/**
+ * In-process cache of ad details keyed by ad ID.
+ * <p>
+ * A changed ad is evicted twice: as soon as the change is published, so the writing transaction
+ * reads its own writes, and again once that transaction completes, dropping anything loaded in
+ * between from uncommitted or rolled-back state. Hit, miss and eviction counters are published as
+ * {@code cache.*} meters tagged with {@code cache=ads}.
+ * <p>
+ * The cache holds futures, so a load in flight is already an entry: concurrent misses for the same ID find
+ * it and wait for it, and are counted as hits, while {@code cache.load} counts the loads that actually ran.
+ */
+@Component
+@Slf4j
+public class AdCache {
+    private final AsyncCache<Integer, Versioned<ExtendedAd>> extendedAds;
+
+    public AdCache(@Value("${cache.ads.max-size}") long maxSize,
+                   MeterRegistry meterRegistry) {
+        this.extendedAds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, extendedAds, "ads");
+    }
+
+    /**
+     * Returns the cached ad details, loading them on a miss. Concurrent misses for the same ID
+     * share a single load; a loader exception is propagated and nothing is cached.
+     * <p>
+     * The load runs on the calling thread after its future has been put into the cache, so no lock of
+     * the cache is held while it runs. If the ad is evicted meanwhile, the future is dropped from the
+     * cache and the loaded details are only returned to the callers already waiting for them.
+     */
+    public Versioned<ExtendedAd> getExtendedAd(int id, IntFunction<Versioned<ExtendedAd>> loader) {
+        CompletableFuture<Versioned<ExtendedAd>> load = new CompletableFuture<>();
+        CompletableFuture<Versioned<ExtendedAd>> cached = extendedAds.get(id, (key, executor) -> load);
+        if (cached == load) {
+            try {
+                load.complete(loader.apply(id));
+            } catch (RuntimeException | Error e) {
+                // The cache drops a failed future, but logs a warning for every failure other than a cancellation,
+                // and a missing ad is an expected failure; waiting callers get the cause
+                CancellationException failure = new CancellationException(e.getMessage());
+                failure.initCause(e);
+                load.completeExceptionally(failure);
+                throw e;
+            }
+        }
+        return join(cached);
+    }
+
+    /**
+     * Returns the cached details of those of the given ads that are cached, without loading the rest
+     * or waiting for loads in flight.
+     */
+    public Map<Integer, Versioned<ExtendedAd>> getPresentExtendedAds(Iterable<Integer> ids) {
+        return extendedAds.synchronous().getAllPresent(ids);
+    }
+
+    public void evict(int id) {
+        extendedAds.synchronous().invalidate(id);
+    }
+
+    public void evictAll() {
+        extendedAds.synchronous().invalidateAll();
+    }
+
+    @EventListener
+    public void onAdChanged(AdChangedEvent event) {
+        evict(event.id());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION)
+    public void afterAdChanged(AdChangedEvent event) {
+        evict(event.id());
+    }
+
+    /**
+     * Ad details embed the author's name and phone, and there is no reverse index from author to
+     * cached ads, so a profile change drops the whole cache. Profile edits are rare next to reads.
+     */
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        log.debug("User id={} changed, clearing ad cache", event.id());
+        evictAll();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION)
+    public void afterUserChanged(UserChangedEvent event) {
+        evictAll();
+    }
+
+    @EventListener(ChangesMissedEvent.class)
+    public void onChangesMissed() {
+        evictAll();
+    }
+
+    private static <V> V join(CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CancellationException | CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ru.ads_online.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+import ru.ads_online.event.AdChangedEvent;
+import ru.ads_online.event.ChangesMissedEvent;
+import ru.ads_online.pojo.dto.ad.Ad;
+import ru.ads_online.pojo.dto.ad.AdCursor;
+import ru.ads_online.pojo.dto.ad.Ads;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized pages of the public ad feed: unfiltered, ordered by ID.
+ * <p>
+ * Each page is kept as ready-to-write JSON, plain and gzipped, together with the range of ad IDs it covers.
+ * A changed ad evicts only the pages whose range contains its ID; other pages are served as they are and
+ * evicted pages are rebuilt on their next request. Like {@link AdCache}, pages are evicted when the change is
+ * published and again when its transaction completes, and a page built while a change was in progress is not kept.
+ */
+@Component
+public class AdFeedCache {
+    private final Cache<PageKey, FeedPage> pages;
+    private final AtomicLong version = new AtomicLong();
+    private final ObjectMapper objectMapper;
+
+    public AdFeedCache(@Value("${cache.ad-feed.max-pages}") long maxPages,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry) {
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(maxPages)
+                .recordStats()
+                .build();
+        this.objectMapper = objectMapper;
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "adFeed");
+    }
+
+    /**
+     * Returns the feed page following the cursor, building and caching it on a miss. Keys are decoded
+     * cursors, so differently encoded forms of one position share a page.
+     *
+     * @param after  position after the previous page, {@code null} for the first page
+     * @param limit  maximum number of ads on the page
+     * @param loader reads the page from the database on a miss
+     * @return the serialized page
+     */
+    public FeedPage getPage(AdCursor after, int limit, Supplier<Ads> loader) {
+        PageKey key = new PageKey(after, limit);
+        FeedPage page = pages.getIfPresent(key);
+        if (page != null) {
+            return page;
+        }
+
+        long startVersion = version.get();
+        page = build(after, loader.get());
+        pages.put(key, page);
+        if (version.get() != startVersion) {
+            pages.invalidate(key);
+        }
+        return page;
+    }
+
+    @EventListener
+    public void onAdChanged(AdChangedEvent event) {
+        evict(event.id());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION)
+    public void afterAdChanged(AdChangedEvent event) {
+        evict(event.id());
+    }
+
+    @EventListener(ChangesMissedEvent.class)
+    public void onChangesMissed() {
+        version.incrementAndGet();
+        pages.invalidateAll();
+    }
+
+    private void evict(int adId) {
+        version.incrementAndGet();
+        pages.asMap().values().removeIf(page -> page.covers(adId));
+    }
+
+    private FeedPage build(AdCursor after, Ads ads) {
+        long fromExclusive = after == null ? Long.MIN_VALUE : after.key();
+        List<Ad> results = ads.getResults();
+        long toInclusive = ads.getNext() == null || results.isEmpty() ? Long.MAX_VALUE : results.getLast().getPk();
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(ads);
+            return new FeedPage(json, gzip(json), DigestUtils.md5DigestAsHex(json), ads.getCount(), fromExclusive, toInclusive);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize ad feed page", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+            gzipStream.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private record PageKey(AdCursor after, int limit) {
+    }
+
+    /**
+     * A serialized feed page.
+     *
+     * @param json          the page as JSON
+     * @param gzippedJson   the same JSON, gzipped
+     * @param eTag          hash of the JSON, equal for equal pages on every node
+     * @param count         number of ads on the page
+     * @param fromExclusive ID after which the page starts
+     * @param toInclusive   ID of the last ad on the page, {@link Long#MAX_VALUE} for the last page,
+     *                      which also takes in ads created after it was built
+     */
+    public record FeedPage(byte[] json, byte[] gzippedJson, String eTag, int count, long fromExclusive, long toInclusive) {
+        boolean covers(int adId) {
+            return adId > fromExclusive && adId <= toInclusive;
+        }
+    }
+}
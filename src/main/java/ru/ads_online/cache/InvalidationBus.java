@@ -0,0 +1,201 @@
+package ru.ads_online.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.ads_online.event.AdChangedEvent;
+import ru.ads_online.event.ChangesMissedEvent;
+import ru.ads_online.event.CommentChangedEvent;
+import ru.ads_online.event.ImageChangedEvent;
+import ru.ads_online.event.UserChangedEvent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Relays change events between application nodes over Postgres {@code LISTEN/NOTIFY}.
+ * <p>
+ * Every local change event is sent with {@code pg_notify} on the connection of the transaction that
+ * produced it, so other nodes hear about a change only once it is committed and never about a rolled-back one.
+ * A listener thread on its own connection receives notifications from other nodes and republishes the original
+ * event locally, where the caches handle it exactly like a local change. After the listener has had to reconnect
+ * it publishes {@link ChangesMissedEvent}, since notifications sent in the meantime are lost.
+ */
+@Component
+@ConditionalOnProperty(name = "cache.invalidation.enabled", havingValue = "true")
+@Slf4j
+public class InvalidationBus implements SmartLifecycle {
+    static final String CHANNEL = "ads_online_changes";
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    private static final Map<String, Class<?>> EVENT_TYPES = Map.of(
+            AdChangedEvent.class.getSimpleName(), AdChangedEvent.class,
+            CommentChangedEvent.class.getSimpleName(), CommentChangedEvent.class,
+            ImageChangedEvent.class.getSimpleName(), ImageChangedEvent.class,
+            UserChangedEvent.class.getSimpleName(), UserChangedEvent.class
+    );
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private volatile boolean running;
+    private volatile Connection connection;
+    private Thread listenerThread;
+
+    public InvalidationBus(JdbcTemplate jdbcTemplate,
+                           DataSourceProperties dataSourceProperties,
+                           ApplicationEventPublisher eventPublisher,
+                           ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+    }
+
+    @EventListener({AdChangedEvent.class, CommentChangedEvent.class, ImageChangedEvent.class, UserChangedEvent.class})
+    public void onChange(Object event) {
+        if (Thread.currentThread() == listenerThread) {
+            return;
+        }
+        Message message = new Message(nodeId, event.getClass().getSimpleName(), objectMapper.valueToTree(event));
+        try {
+            jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + event, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        try {
+            connect();
+        } catch (SQLException e) {
+            log.warn("Could not listen for changes from other nodes, will retry", e);
+        }
+        listenerThread = new Thread(this::listen, "invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        closeConnection();
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+            try {
+                listenerThread.join(POLL_TIMEOUT_MILLIS * 2L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try {
+                Connection current = connection;
+                if (current == null) {
+                    current = connect();
+                    log.info("Reconnected to channel {}, clearing local caches", CHANNEL);
+                    eventPublisher.publishEvent(new ChangesMissedEvent());
+                }
+                PGNotification[] notifications = current.unwrap(PGConnection.class).getNotifications(POLL_TIMEOUT_MILLIS);
+                if (notifications != null) {
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Lost connection to channel {}, reconnecting in {} ms", CHANNEL, RECONNECT_DELAY_MILLIS, e);
+                closeConnection();
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        try {
+            Message message = objectMapper.readValue(payload, Message.class);
+            if (nodeId.equals(message.node())) {
+                return;
+            }
+            Class<?> eventType = EVENT_TYPES.get(message.type());
+            if (eventType == null) {
+                log.warn("Ignoring change notification of unknown type {}", message.type());
+                return;
+            }
+            eventPublisher.publishEvent(objectMapper.treeToValue(message.event(), eventType));
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed change notification: {}", payload, e);
+        } catch (RuntimeException e) {
+            log.error("Could not apply change notification: {}", payload, e);
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        Connection newConnection = DriverManager.getConnection(
+                dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(),
+                dataSourceProperties.determinePassword());
+        try (Statement statement = newConnection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        } catch (SQLException e) {
+            newConnection.close();
+            throw e;
+        }
+        connection = newConnection;
+        return newConnection;
+    }
+
+    private void closeConnection() {
+        Connection current = connection;
+        connection = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (SQLException e) {
+                log.debug("Could not close listener connection", e);
+            }
+        }
+    }
+
+    /**
+     * Notification payload.
+     *
+     * @param node  ID of the node that made the change
+     * @param type  simple class name of the change event
+     * @param event the serialized change event
+     */
+    record Message(String node, String type, JsonNode event) {
+    }
+}
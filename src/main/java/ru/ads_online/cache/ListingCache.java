@@ -0,0 +1,152 @@
+package ru.ads_online.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import ru.ads_online.pojo.dto.Versioned;
+import ru.ads_online.pojo.dto.ad.AdFilter;
+import ru.ads_online.pojo.dto.ad.Ads;
+import ru.ads_online.pojo.dto.comment.Comments;
+import ru.ads_online.service.AdService;
+import ru.ads_online.service.CommentService;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stale-while-revalidate cache of the ad listing and of comment lists.
+ * <p>
+ * An entry older than {@code refresh-after} is still served as it is, while a single refresh per key runs on a
+ * bounded executor; requests arriving during the refresh keep getting the stale entry. Only an entry older than
+ * {@code max-staleness} is dropped and reloaded in the request. If the executor is saturated the refresh is
+ * skipped quietly, counted in {@code cache.listing.refresh.rejected}, and retried on a later request, so under
+ * load the database sees at most one query per key and refresh interval. Changes are not pushed into the
+ * cache: a listing may lag by up to {@code max-staleness}.
+ * <p>
+ * Nothing is built while the cache is disabled.
+ */
+@Component
+@Slf4j
+public class ListingCache {
+    private final boolean enabled;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final LoadingCache<AdListingKey, Versioned<Ads>> adListings;
+    private final LoadingCache<Integer, Versioned<Comments>> comments;
+    private final Counter rejectedRefreshes;
+
+    public ListingCache(@Value("${cache.listing.enabled}") boolean enabled,
+                        @Value("${cache.listing.refresh-after}") Duration refreshAfter,
+                        @Value("${cache.listing.max-staleness}") Duration maxStaleness,
+                        @Value("${cache.listing.max-size}") long maxSize,
+                        @Value("${cache.listing.refresh-threads}") int refreshThreads,
+                        @Value("${cache.listing.refresh-queue}") int refreshQueue,
+                        AdService adService,
+                        CommentService commentService,
+                        MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        if (!enabled) {
+            this.refreshExecutor = null;
+            this.adListings = null;
+            this.comments = null;
+            this.rejectedRefreshes = null;
+            return;
+        }
+
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(refreshQueue), new CustomizableThreadFactory("listing-refresh-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.rejectedRefreshes = Counter.builder("cache.listing.refresh.rejected")
+                .description("Listing refreshes skipped because the refresh executor was saturated")
+                .register(meterRegistry);
+        this.adListings = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(maxStaleness)
+                .executor(Runnable::run)
+                .recordStats()
+                .build(skippingRejectedRefreshes(key -> {
+                    String version = adService.getAdsVersion();
+                    return new Versioned<>(adService.getAllAds(key.filter(), key.after(), key.limit()), version);
+                }));
+        this.comments = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(maxStaleness)
+                .executor(Runnable::run)
+                .recordStats()
+                .build(skippingRejectedRefreshes(adId -> {
+                    String version = commentService.getCommentsVersion(adId);
+                    return new Versioned<>(commentService.getAllComments(adId), version);
+                }));
+        CaffeineCacheMetrics.monitor(meterRegistry, adListings, "adListings");
+        CaffeineCacheMetrics.monitor(meterRegistry, comments, "comments");
+        log.info("Serving listings stale-while-revalidate: refresh after {}, max staleness {}", refreshAfter, maxStaleness);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @throws ru.ads_online.exception.BadRequestException if the cursor is malformed
+     */
+    public Versioned<Ads> getAds(AdFilter filter, String after, int limit) {
+        return adListings.get(new AdListingKey(filter, after, limit));
+    }
+
+    /**
+     * @throws ru.ads_online.exception.NotFoundException if the ad is not found
+     */
+    public Versioned<Comments> getComments(int adId) {
+        return comments.get(adId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs refreshes on the refresh executor, and reports a refresh the saturated executor rejects as cancelled,
+     * which the cache neither logs nor keeps in flight. Simply dropping the task would leave its refresh pending,
+     * blocking further refreshes of the key until the entry expires. The cache's own upkeep is cheap and runs in
+     * the calling thread, so it never competes with refreshes for the executor.
+     */
+    private <K, V> CacheLoader<K, V> skippingRejectedRefreshes(CacheLoader<K, V> loader) {
+        return new CacheLoader<>() {
+            @Override
+            public V load(K key) throws Exception {
+                return loader.load(key);
+            }
+
+            @Override
+            public CompletableFuture<? extends V> asyncReload(K key, V oldValue, Executor executor) throws Exception {
+                try {
+                    return CacheLoader.super.asyncReload(key, oldValue, refreshExecutor);
+                } catch (RejectedExecutionException e) {
+                    rejectedRefreshes.increment();
+                    return CompletableFuture.failedFuture(new CancellationException("Refresh executor is saturated"));
+                }
+            }
+        };
+    }
+
+    private record AdListingKey(AdFilter filter, String after, int limit) {
+    }
+}
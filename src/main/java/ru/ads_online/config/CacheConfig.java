@@ -0,0 +1,16 @@
+package ru.ads_online.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.ads_online.cache.SingleFlight;
+import ru.ads_online.pojo.dto.image.ImageContent;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public SingleFlight<Integer, ImageContent> imageLoads(MeterRegistry meterRegistry) {
+        return new SingleFlight<>("images", meterRegistry);
+    }
+}
@@ -34,10 +34,12 @@ public class WebSecurityConfig {
                         request -> request
                                 .requestMatchers(AUTH_WHITELIST)
                                 .permitAll()
-                                .requestMatchers(HttpMethod.GET, "/ads")
+                                .requestMatchers(HttpMethod.GET, "/ads", "/ads/changes", "/ads/search", "/ads/suggest")
                                 .permitAll()
                                 .requestMatchers("/ads/**", "/users/**")
                                 .authenticated()
+                                .requestMatchers("/actuator/**")
+                                .hasRole("ADMIN")
                 )
                 .cors()
                 .and()
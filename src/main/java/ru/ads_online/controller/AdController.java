@@ -1,5 +1,7 @@
 package ru.ads_online.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -7,7 +9,12 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.mime.MimeTypeException;
@@ -17,16 +24,33 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.ads_online.cache.AdFeedCache;
+import ru.ads_online.cache.ListingCache;
+import ru.ads_online.exception.BadRequestException;
+import ru.ads_online.pojo.dto.Versioned;
 import ru.ads_online.pojo.dto.ad.Ad;
+import ru.ads_online.pojo.dto.ad.AdBatch;
+import ru.ads_online.pojo.dto.ad.AdBulkResult;
+import ru.ads_online.pojo.dto.ad.AdChanges;
+import ru.ads_online.pojo.dto.ad.AdFilter;
+import ru.ads_online.pojo.dto.ad.AdSearchResult;
+import ru.ads_online.pojo.dto.ad.AdSort;
 import ru.ads_online.pojo.dto.ad.Ads;
 import ru.ads_online.pojo.dto.ad.CreateOrUpdateAd;
 import ru.ads_online.pojo.dto.ad.ExtendedAd;
 import ru.ads_online.security.UserPrincipal;
 import ru.ads_online.service.AdService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 @CrossOrigin(value = "http://localhost:3000")
 @RestController
@@ -34,22 +58,167 @@ import java.net.URI;
 @RequiredArgsConstructor
 @Slf4j
 public class AdController {
+    private static final String DEFAULT_PAGE_SIZE = "50";
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_QUERY_LENGTH = 100;
+    private static final String DEFAULT_CHANGES = "500";
+    private static final int MAX_CHANGES = 1000;
+    private static final String MAX_PRICE = "10000000";
+    private static final int MAX_TITLE_LENGTH = 32;
+    private static final String DEFAULT_SUGGESTIONS = "10";
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_BULK_SIZE = 1000;
+    private static final int NDJSON_SEPARATOR = '\n';
+    private static final String GZIP_ENCODING = "gzip";
     private final AdService adService;
+    private final ObjectMapper objectMapper;
+    private final ListingCache listingCache;
 
     @Operation(summary = "Get all advertisements", tags = {"Advertisements"})
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = Ads.class)))}
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = Ads.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified", content = @Content()),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content())}
     )
     @GetMapping()
-    public ResponseEntity<Ads> getAllAds() {
-        log.info("Received request to fetch all ads");
+    public ResponseEntity<Ads> getAllAds(@RequestParam(required = false) String after,
+                                         @Positive @Max(MAX_PAGE_SIZE) @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int limit,
+                                         @PositiveOrZero @RequestParam(required = false) Integer minPrice,
+                                         @PositiveOrZero @RequestParam(required = false) Integer maxPrice,
+                                         @Positive @RequestParam(required = false) Integer authorId,
+                                         @RequestParam(required = false) String sort,
+                                         WebRequest webRequest) {
+        log.info("Received request to fetch ads after={} limit={} price={}..{} author={} sort={}",
+                after, limit, minPrice, maxPrice, authorId, sort);
 
-        Ads allAds = adService.getAllAds();
+        AdFilter filter = new AdFilter(minPrice, maxPrice, authorId, parseSort(sort));
+        if (listingCache.isEnabled()) {
+            Versioned<Ads> cachedAds = listingCache.getAds(filter, after, limit);
+            log.info("Successfully fetched {} ads", cachedAds.body().getCount());
+            return ResponseEntity.ok()
+                    .eTag(cachedAds.version())
+                    .body(cachedAds.body());
+        }
+        String version = adService.getAdsVersion();
+        if (webRequest.checkNotModified(version)) {
+            log.info("Ads are not modified since version={}", version);
+            return null;
+        }
+        Ads allAds = adService.getAllAds(filter, after, limit);
 
-        log.info("Successfully fetched all {} ads", allAds.getCount());
+        log.info("Successfully fetched {} ads", allAds.getCount());
         return ResponseEntity.ok(allAds);
     }
 
+    /**
+     * Serves the unfiltered feed from pre-serialized pages. Mapped ahead of {@link #getAllAds} whenever
+     * no filter or sort is requested, and documented by it.
+     */
+    @Operation(hidden = true)
+    @GetMapping(params = {"!minPrice", "!maxPrice", "!authorId", "!sort"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getAdFeed(@RequestParam(required = false) String after,
+                                            @Positive @Max(MAX_PAGE_SIZE) @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int limit,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        log.info("Received request to fetch ad feed after={} limit={}", after, limit);
+
+        AdFeedCache.FeedPage page = adService.getFeedPage(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        log.info("Successfully fetched {} ads", page.count());
+        if (acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING)
+                    .eTag(page.eTag() + "-" + GZIP_ENCODING)
+                    .body(page.gzippedJson());
+        }
+        return response.eTag(page.eTag())
+                .body(page.json());
+    }
+
+    @Operation(summary = "Stream all advertisements as newline-delimited JSON", tags = {"Advertisements"})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = Ad.class)))}
+    )
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllAds() {
+        log.info("Received request to stream all ads");
+
+        ObjectWriter adWriter = objectMapper.writerFor(Ad.class);
+        StreamingResponseBody body = outputStream -> {
+            try {
+                adService.streamAllAds(ad -> {
+                    try {
+                        outputStream.write(adWriter.writeValueAsBytes(ad));
+                        outputStream.write(NDJSON_SEPARATOR);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            log.info("Successfully streamed all ads");
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @Operation(summary = "Get advertisements changed since a watermark", tags = {"Advertisements"})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = AdChanges.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content())}
+    )
+    @GetMapping("/changes")
+    public ResponseEntity<AdChanges> getChanges(@PositiveOrZero @RequestParam(defaultValue = "0") long since,
+                                                @Positive @Max(MAX_CHANGES) @RequestParam(defaultValue = DEFAULT_CHANGES) int limit) {
+        log.info("Received request to fetch ad changes since={} limit={}", since, limit);
+
+        AdChanges changes = adService.getChanges(since, limit);
+
+        log.info("Successfully fetched {} updated and {} deleted ads up to watermark={}",
+                changes.getUpdated().size(), changes.getDeleted().size(), changes.getWatermark());
+        return ResponseEntity.ok(changes);
+    }
+
+    @Operation(summary = "Search advertisements by title and description", tags = {"Advertisements"})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = AdSearchResult.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content())}
+    )
+    @GetMapping("/search")
+    public ResponseEntity<AdSearchResult> searchAds(@NotBlank @Size(max = MAX_QUERY_LENGTH) @RequestParam String q,
+                                                    @PositiveOrZero @RequestParam(defaultValue = "0") int minPrice,
+                                                    @PositiveOrZero @RequestParam(defaultValue = MAX_PRICE) int maxPrice,
+                                                    @PositiveOrZero @RequestParam(defaultValue = "0") int page,
+                                                    @Positive @Max(MAX_PAGE_SIZE) @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int size) {
+        log.info("Received request to search ads with query={} price={}..{} page={} size={}", q, minPrice, maxPrice, page, size);
+
+        AdSearchResult foundAds = adService.searchAds(q, minPrice, maxPrice, page, size);
+
+        log.info("Successfully found {} ads for query={}", foundAds.getCount(), q);
+        return ResponseEntity.ok(foundAds);
+    }
+
+    @Operation(summary = "Suggest advertisement titles for the text typed so far", tags = {"Advertisements"})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, array = @ArraySchema(schema = @Schema(implementation = String.class)))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content())}
+    )
+    @GetMapping("/suggest")
+    public ResponseEntity<List<String>> suggestTitles(@NotBlank @Size(max = MAX_TITLE_LENGTH) @RequestParam String q,
+                                                      @Positive @Max(MAX_SUGGESTIONS) @RequestParam(defaultValue = DEFAULT_SUGGESTIONS) int limit) {
+        log.debug("Received request to suggest titles for query={}", q);
+
+        List<String> suggestions = adService.suggestTitles(q, limit);
+
+        log.debug("Suggested {} titles for query={}", suggestions.size(), q);
+        return ResponseEntity.ok(suggestions);
+    }
+
     @Operation(summary = "Post an advertisement", tags = {"Advertisements"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Created",
@@ -75,9 +244,30 @@ public class AdController {
         return ResponseEntity.created(location).body(createdAd);
     }
 
+    @Operation(summary = "Post many advertisements at once", tags = {"Advertisements"})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK, with the outcome of every advertisement",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = AdBulkResult.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
+            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content())}
+    )
+    @PostMapping(value = "/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AdBulkResult> addAds(@AuthenticationPrincipal UserPrincipal userDetails,
+                                               @NotEmpty @Size(max = MAX_BULK_SIZE) @RequestPart List<CreateOrUpdateAd> properties,
+                                               @RequestPart List<MultipartFile> images) {
+        String username = userDetails.getUser().getUsername();
+        log.info("Received request to create {} ads with {} images from user={}", properties.size(), images.size(), username);
+
+        AdBulkResult result = adService.addAds(userDetails, properties, images);
+
+        log.info("Created {} ads, {} failed, for user={}", result.getCreated(), result.getFailed(), username);
+        return ResponseEntity.ok(result);
+    }
+
     @Operation(summary = "Get information on the advertisement", tags = {"Advertisements"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ExtendedAd.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified", content = @Content()),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
             @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
@@ -85,9 +275,27 @@ public class AdController {
     @GetMapping("/{id}")
     public ResponseEntity<ExtendedAd> getAd(@Positive @PathVariable(name = "id") int id) {
         log.info("Received request to fetch ad with id={}", id);
-        ExtendedAd adInfo = adService.getAd(id);
+        Versioned<ExtendedAd> adInfo = adService.getAd(id);
         log.info("Successfully fetched ad with id={}", id);
-        return ResponseEntity.ok(adInfo);
+        return ResponseEntity.ok()
+                .eTag(adInfo.version())
+                .body(adInfo.body());
+    }
+
+    @Operation(summary = "Get information on several advertisements at once", tags = {"Advertisements"})
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = AdBatch.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
+            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content())}
+    )
+    @GetMapping("/batch")
+    public ResponseEntity<AdBatch> getAds(@NotEmpty @Size(max = MAX_BATCH_SIZE) @RequestParam List<@Positive Integer> ids) {
+        log.info("Received request to fetch ads with ids={}", ids);
+
+        AdBatch foundAds = adService.getAds(ids.stream().distinct().toList());
+
+        log.info("Successfully fetched {} ads, {} not found", foundAds.getCount(), foundAds.getMissing().size());
+        return ResponseEntity.ok(foundAds);
     }
 
     @Operation(summary = "Delete the advertisement", tags = {"Advertisements"})
@@ -96,7 +304,8 @@ public class AdController {
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content()),
-            @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())}
     )
     @PreAuthorize("@authorizationService.hasPermissionForAd(#userDetails, #id)")
     @DeleteMapping("/{id}")
@@ -118,7 +327,8 @@ public class AdController {
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content()),
-            @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())}
     )
     @PreAuthorize("@authorizationService.hasPermissionForAd(#userDetails, #id)")
     @PatchMapping("/{id}")
@@ -137,14 +347,17 @@ public class AdController {
     @Operation(summary = "Get advertisements of the authorized user", tags = {"Advertisements"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = Ads.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content())}
     )
     @GetMapping("/me")
-    public ResponseEntity<Ads> getUserAds(@AuthenticationPrincipal UserPrincipal userDetails) {
+    public ResponseEntity<Ads> getUserAds(@AuthenticationPrincipal UserPrincipal userDetails,
+                                          @RequestParam(required = false) String after,
+                                          @Positive @Max(MAX_PAGE_SIZE) @RequestParam(defaultValue = DEFAULT_PAGE_SIZE) int limit) {
         String username = userDetails.getUser().getUsername();
-        log.info("Received request to get all ads of user={}", username);
+        log.info("Received request to get ads of user={} after={} limit={}", username, after, limit);
 
-        Ads currentUserAds = adService.getUserAds(userDetails);
+        Ads currentUserAds = adService.getUserAds(userDetails, after, limit);
 
         log.info("Successfully received {} ads of user={}", currentUserAds.getCount(), username);
         return ResponseEntity.ok(currentUserAds);
@@ -155,7 +368,8 @@ public class AdController {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM_VALUE, array = @ArraySchema(schema = @Schema(implementation = byte[].class)))),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content()),
-            @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())}
     )
     @PreAuthorize("@authorizationService.hasPermissionForAd(#userDetails, #id)")
     @PatchMapping(value = "/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -172,4 +386,24 @@ public class AdController {
                 .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
                 .body(updateAdImageUrl);
     }
-}
\ No newline at end of file
+
+    private AdSort parseSort(String sort) {
+        try {
+            return AdSort.of(sort);
+        } catch (IllegalArgumentException e) {
+            String message = String.format("Unknown sort=%s", sort);
+            log.warn(message);
+            throw new BadRequestException(message);
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        return Arrays.stream(acceptEncoding.split(","))
+                .map(coding -> coding.replace(" ", "").toLowerCase(Locale.ROOT).split(";"))
+                .anyMatch(coding -> coding[0].equals(GZIP_ENCODING)
+                        && Arrays.stream(coding).noneMatch(parameter -> parameter.matches("q=0(\\.0*)?")));
+    }
+}
@@ -14,7 +14,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.ads_online.cache.ListingCache;
+import ru.ads_online.pojo.dto.Versioned;
 import ru.ads_online.pojo.dto.comment.Comment;
 import ru.ads_online.pojo.dto.comment.Comments;
 import ru.ads_online.pojo.dto.comment.CreateOrUpdateComment;
@@ -31,18 +34,33 @@ import java.net.URI;
 @Slf4j
 public class CommentController {
     private final CommentService commentService;
+    private final ListingCache listingCache;
 
     @Operation(summary = "Get comments for the advertisement", tags = {"Comments"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Ok", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = Comments.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified", content = @Content()),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
             @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
     )
     @GetMapping("/{id}/comments")
-    public ResponseEntity<Comments> getAllCommentsForAd(@PathVariable(name = "id") @Positive int adId) {
+    public ResponseEntity<Comments> getAllCommentsForAd(@PathVariable(name = "id") @Positive int adId,
+                                                        WebRequest webRequest) {
         log.info("Received request to fetch all comments for Ad ID: {}", adId);
 
+        if (listingCache.isEnabled()) {
+            Versioned<Comments> cachedComments = listingCache.getComments(adId);
+            log.info("Successfully fetched {} comments for Ad ID: {}", cachedComments.body().getCount(), adId);
+            return ResponseEntity.ok()
+                    .eTag(cachedComments.version())
+                    .body(cachedComments.body());
+        }
+        String version = commentService.getCommentsVersion(adId);
+        if (webRequest.checkNotModified(version)) {
+            log.info("Comments for Ad ID: {} are not modified since version={}", adId, version);
+            return null;
+        }
         Comments comments = commentService.getAllComments(adId);
 
         log.info("Successfully fetched {} comments for Ad ID: {}", comments.getCount(), adId);
@@ -80,7 +98,8 @@ public class CommentController {
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content()),
-            @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())}
     )
     @PreAuthorize("@authorizationService.hasPermissionForComment(#userDetails, #adId, #commentId)")
     @DeleteMapping("/{adId}/comments/{commentId}")
@@ -102,7 +121,8 @@ public class CommentController {
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content()),
-            @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())}
     )
     @PreAuthorize("@authorizationService.hasPermissionForComment(#userDetails, #adId, #commentId)")
     @PatchMapping("/{adId}/comments/{commentId}")
@@ -8,12 +8,11 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tika.Tika;
-import org.springframework.http.HttpHeaders;
+import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import ru.ads_online.pojo.entity.ImageEntity;
+import ru.ads_online.pojo.dto.image.ImageContent;
 import ru.ads_online.service.ImageService;
 
 @CrossOrigin(value = "http://localhost:3000")
@@ -23,32 +22,30 @@ import ru.ads_online.service.ImageService;
 @Slf4j
 public class ImageController {
     private final ImageService imageService;
-    private static final Tika tika = new Tika();
 
-    @Operation(summary = "Get image", tags = {"Images"})
+    @Operation(summary = "Get image, whole or a byte range of it", tags = {"Images"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Ok", content = {
                     @Content(mediaType = MediaType.IMAGE_PNG_VALUE, schema = @Schema(type = "string", format = "byte")),
                     @Content(mediaType = MediaType.IMAGE_JPEG_VALUE, schema = @Schema(type = "string", format = "byte")),
                     @Content(mediaType = MediaType.IMAGE_GIF_VALUE, schema = @Schema(type = "string", format = "byte"))}),
+            @ApiResponse(responseCode = "206", description = "Partial content", content = @Content()),
+            @ApiResponse(responseCode = "304", description = "Not modified", content = @Content()),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
-            @ApiResponse(responseCode = "404", description = "Not found", content = @Content())}
+            @ApiResponse(responseCode = "404", description = "Not found", content = @Content()),
+            @ApiResponse(responseCode = "416", description = "Range not satisfiable", content = @Content())}
     )
     @GetMapping("/{id}")
-    public ResponseEntity<byte[]> getImage(@Positive @PathVariable(name = "id") int id) {
+    public ResponseEntity<Resource> getImage(@Positive @PathVariable(name = "id") int id) {
         log.info("Received request to fetch image with id={}", id);
 
-        ImageEntity imageEntity = imageService.getImage(id);
-        String mimeType = determineContentType(imageEntity);
+        ImageContent image = imageService.getImage(id);
 
+        // Content-Length, Accept-Ranges, 304 and 206 responses are added by Spring for resource bodies
         log.info("Successfully fetched image with id={}", id);
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_TYPE, mimeType)
-                .body(imageEntity.getImage());
-    }
-
-    private String determineContentType(ImageEntity imageEntity) {
-        byte[] imageData = imageEntity.getImage();
-        return tika.detect(imageData);
+                .contentType(MediaType.parseMediaType(image.contentType()))
+                .eTag(image.hash())
+                .body(image.content());
     }
 }
\ No newline at end of file
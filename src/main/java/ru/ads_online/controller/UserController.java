@@ -14,6 +14,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ads_online.pojo.dto.Versioned;
 import ru.ads_online.pojo.dto.user.NewPassword;
 import ru.ads_online.pojo.dto.user.UpdateUser;
 import ru.ads_online.pojo.dto.user.User;
@@ -35,7 +36,8 @@ public class UserController {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content()),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
-            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content())})
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())})
     @PatchMapping("/set_password")
     public ResponseEntity<?> setPassword(@AuthenticationPrincipal UserPrincipal userDetails,
                                          @RequestBody @Valid NewPassword newPassword) {
@@ -51,6 +53,7 @@ public class UserController {
     @Operation(summary = "Get information about the authorized user", tags = {"Users"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = User.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified", content = @Content()),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
             @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content())})
     @GetMapping("/me")
@@ -58,17 +61,20 @@ public class UserController {
         String username = userDetails.getUser().getUsername();
         log.info("Received request to get user details from user {}", username);
 
-        User user = userService.getData(userDetails);
+        Versioned<User> user = userService.getData(userDetails);
 
         log.info("Successfully fetched user details for {}", username);
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok()
+                .eTag(user.version())
+                .body(user.body());
     }
 
     @Operation(summary = "Update information about the authorized user", tags = {"Users"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = UpdateUser.class))),
             @ApiResponse(responseCode = "400", description = "Bad request", content = @Content()),
-            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content())})
+            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())})
     @PatchMapping("/me")
     public ResponseEntity<UpdateUser> updateData(@AuthenticationPrincipal UserPrincipal userDetails,
                                                  @RequestBody @Valid UpdateUser updateUser) {
@@ -84,7 +90,8 @@ public class UserController {
     @Operation(summary = "Update the avatar of the authorized user", tags = {"Users"})
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "OK", content = @Content()),
-            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content())})
+            @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content()),
+            @ApiResponse(responseCode = "409", description = "Conflict", content = @Content())})
     @PatchMapping(value = "/me/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> updateImage(@AuthenticationPrincipal UserPrincipal userDetails,
                                          @RequestParam MultipartFile image) throws IOException {
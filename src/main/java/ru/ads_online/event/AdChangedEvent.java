@@ -0,0 +1,11 @@
+package ru.ads_online.event;
+
+/**
+ * Published by the ad service whenever an ad is created, updated or deleted.
+ *
+ * @param id            ID of the changed ad
+ * @param previousTitle title before the change, {@code null} for a created ad
+ * @param title         title after the change, {@code null} for a deleted ad
+ */
+public record AdChangedEvent(int id, String previousTitle, String title) {
+}
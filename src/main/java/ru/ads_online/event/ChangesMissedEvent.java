@@ -0,0 +1,8 @@
+package ru.ads_online.event;
+
+/**
+ * Published when change events from other application nodes may have been lost, for example
+ * while the invalidation listener was reconnecting. Local caches should drop everything they hold.
+ */
+public record ChangesMissedEvent() {
+}
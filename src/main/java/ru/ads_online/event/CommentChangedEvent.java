@@ -0,0 +1,10 @@
+package ru.ads_online.event;
+
+/**
+ * Published by the comment service whenever a comment is created, updated or deleted.
+ *
+ * @param id   ID of the changed comment
+ * @param adId ID of the ad the comment belongs to
+ */
+public record CommentChangedEvent(int id, int adId) {
+}
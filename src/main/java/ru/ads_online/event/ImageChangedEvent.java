@@ -0,0 +1,9 @@
+package ru.ads_online.event;
+
+/**
+ * Published by the image service whenever stored image data is replaced or deleted.
+ *
+ * @param id ID of the changed image
+ */
+public record ImageChangedEvent(int id) {
+}
@@ -0,0 +1,9 @@
+package ru.ads_online.event;
+
+/**
+ * Published by the user service whenever profile data shown on ads (name, phone) changes.
+ *
+ * @param id ID of the changed user
+ */
+public record UserChangedEvent(int id) {
+}
@@ -2,6 +2,8 @@ package ru.ads_online.exception;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.mime.MimeTypeException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.ObjectError;
@@ -59,6 +61,42 @@ public class AdsOnlineExceptionHandler {
 
         return ResponseEntity.badRequest().body(errorBody);
     }
+
+    /**
+     * Another request changed the same row between this request's read and its commit.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, Object>> handleOptimisticLockingFailureException(OptimisticLockingFailureException exception) {
+        String message = "The resource was changed by another request, please retry";
+
+        Map<String, Object> errorBody = Map.of(
+                "status", HttpStatus.CONFLICT.value(),
+                "message", message
+        );
+
+        log.warn("Concurrent update: {}", exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(errorBody);
+    }
+
+    /**
+     * The request waited for a lock held by another request in a way the database could not resolve, for
+     * instance a deadlock; nothing was changed.
+     */
+    @ExceptionHandler(PessimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, Object>> handlePessimisticLockingFailureException(PessimisticLockingFailureException exception) {
+        String message = "The resource is being changed by another request, please retry";
+
+        Map<String, Object> errorBody = Map.of(
+                "status", HttpStatus.CONFLICT.value(),
+                "message", message
+        );
+
+        log.warn("Lock conflict: {}", exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(errorBody);
+    }
+
     @ExceptionHandler(MimeTypeException.class)
     public ResponseEntity<Map<String, Object>> handleMMimeTypeException(MimeTypeException exception) {
         String message = exception.getMessage();
@@ -2,12 +2,26 @@ package ru.ads_online.mapper;
 
 import org.springframework.stereotype.Component;
 import ru.ads_online.pojo.dto.ad.Ad;
+import ru.ads_online.pojo.dto.ad.AdBatch;
+import ru.ads_online.pojo.dto.ad.AdBulkItem;
+import ru.ads_online.pojo.dto.ad.AdBulkResult;
+import ru.ads_online.pojo.dto.ad.AdChanges;
+import ru.ads_online.pojo.dto.ad.AdPage;
+import ru.ads_online.pojo.dto.ad.AdSearchResult;
 import ru.ads_online.pojo.dto.ad.Ads;
 import ru.ads_online.pojo.dto.ad.CreateOrUpdateAd;
 import ru.ads_online.pojo.dto.ad.ExtendedAd;
+import ru.ads_online.pojo.dto.ad.PriceRange;
 import ru.ads_online.pojo.entity.AdEntity;
+import ru.ads_online.pojo.projection.AdDetails;
+import ru.ads_online.pojo.projection.AdSummary;
+import ru.ads_online.pojo.projection.PriceBucketCount;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Component
 public class AdMapper {
@@ -36,33 +50,101 @@ public class AdMapper {
                 .setTitle(adEntity.getTitle());
     }
 
-    public ExtendedAd toExtendedAd(AdEntity adEntity) {
-        if (adEntity == null) {
+    public Ad toAd(AdSummary adSummary) {
+        if (adSummary == null) {
+            return null;
+        }
+
+        return new Ad()
+                .setAuthor(adSummary.getAuthorId())
+                .setImage(adSummary.getImage())
+                .setPk(adSummary.getId())
+                .setPrice(adSummary.getPrice())
+                .setTitle(adSummary.getTitle());
+    }
+
+    public List<PriceRange> toPriceRanges(List<PriceBucketCount> bucketCounts, List<Integer> bucketBounds) {
+        Map<Integer, Long> countByBucket = bucketCounts.stream()
+                .collect(Collectors.toMap(PriceBucketCount::getBucket, PriceBucketCount::getCount));
+
+        return IntStream.rangeClosed(0, bucketBounds.size())
+                .mapToObj(bucket -> new PriceRange()
+                        .setFrom(bucket == 0 ? 0 : bucketBounds.get(bucket - 1))
+                        .setTo(bucket == bucketBounds.size() ? null : bucketBounds.get(bucket))
+                        .setCount(countByBucket.getOrDefault(bucket, 0L)))
+                .toList();
+    }
+
+    public ExtendedAd toExtendedAd(AdDetails adDetails) {
+        if (adDetails == null) {
             return null;
         }
 
         return new ExtendedAd()
-                .setPk(adEntity.getId())
-                .setAuthorFirstName(adEntity.getAuthor().getFirstName())
-                .setAuthorLastName(adEntity.getAuthor().getLastName())
-                .setDescription(adEntity.getDescription())
-                .setEmail(adEntity.getAuthor().getUsername())
-                .setImage(adEntity.getImage())
-                .setPhone(adEntity.getAuthor().getPhone())
-                .setPrice(adEntity.getPrice())
-                .setTitle(adEntity.getTitle());
+                .setPk(adDetails.getId())
+                .setAuthorFirstName(adDetails.getAuthorFirstName())
+                .setAuthorLastName(adDetails.getAuthorLastName())
+                .setDescription(adDetails.getDescription())
+                .setEmail(adDetails.getEmail())
+                .setImage(adDetails.getImage())
+                .setPhone(adDetails.getPhone())
+                .setPrice(adDetails.getPrice())
+                .setTitle(adDetails.getTitle());
     }
 
-    public Ads toAds(List<AdEntity> adList) {
+    public AdBatch toAdBatch(List<Integer> ids, Map<Integer, ExtendedAd> adsById) {
+        List<ExtendedAd> results = ids.stream()
+                .map(adsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+        List<Integer> missing = ids.stream()
+                .filter(id -> !adsById.containsKey(id))
+                .toList();
+
+        return new AdBatch()
+                .setCount(results.size())
+                .setResults(results)
+                .setMissing(missing);
+    }
+
+    public AdBulkResult toAdBulkResult(List<AdBulkItem> items) {
+        int created = (int) items.stream()
+                .filter(item -> item.getAd() != null)
+                .count();
+
+        return new AdBulkResult()
+                .setCreated(created)
+                .setFailed(items.size() - created)
+                .setResults(items);
+    }
+
+    public AdSearchResult toAdSearchResult(List<Ad> adList, List<PriceRange> priceRanges) {
+        return new AdSearchResult()
+                .setCount(adList.size())
+                .setResults(adList)
+                .setPriceRanges(priceRanges);
+    }
+
+    public AdChanges toAdChanges(long watermark, boolean hasMore, List<Ad> updated, List<Integer> deleted) {
+        return new AdChanges()
+                .setWatermark(watermark)
+                .setHasMore(hasMore)
+                .setUpdated(updated)
+                .setDeleted(deleted);
+    }
+
+    public Ads toAds(AdPage adPage) {
+        return toAds(adPage.ads())
+                .setNext(adPage.next() == null ? null : adPage.next().encode());
+    }
+
+    public Ads toAds(List<Ad> adList) {
         if (adList == null) {
             return null;
         }
-        List<Ad> adResults = adList.stream()
-                .map(this::toAd)
-                .toList();
 
         return new Ads()
                 .setCount(adList.size())
-                .setResults(adResults);
+                .setResults(adList);
     }
 }
@@ -0,0 +1,11 @@
+package ru.ads_online.pojo.dto;
+
+/**
+ * A response body together with the version of the data it was built from, used as its entity tag.
+ * The version is read no later than the body, so it never claims a newer state than the body holds.
+ *
+ * @param body    the response body
+ * @param version opaque version of the body
+ */
+public record Versioned<T>(T body, String version) {
+}
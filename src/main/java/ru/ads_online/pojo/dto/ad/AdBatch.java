@@ -0,0 +1,14 @@
+package ru.ads_online.pojo.dto.ad;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@Data
+@Accessors(chain = true)
+public class AdBatch {
+    private int count;
+    private List<ExtendedAd> results;
+    private List<Integer> missing;
+}
@@ -0,0 +1,15 @@
+package ru.ads_online.pojo.dto.ad;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * Outcome of one entry of a bulk ad creation: the created ad, or the reason it was not created.
+ */
+@Data
+@Accessors(chain = true)
+public class AdBulkItem {
+    private int index;
+    private Ad ad;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package ru.ads_online.pojo.dto.ad;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@Data
+@Accessors(chain = true)
+public class AdChanges {
+    private long watermark;
+    private boolean hasMore;
+    private List<Ad> updated;
+    private List<Integer> deleted;
+    /**
+     * Changes after the requested watermark have been pruned: reload all ads, then read changes from this watermark.
+     */
+    private boolean resync;
+}
@@ -0,0 +1,37 @@
+package ru.ads_online.pojo.dto.ad;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in the ad feed: the ordering, the sort key and the id of the last ad a client has received.
+ * Clients only ever see the opaque string produced by {@link #encode()}.
+ *
+ * @param sort ordering of the feed the cursor was issued for; the key means nothing in another ordering
+ * @param key  value of the sort column of the last ad on the page
+ * @param id   id of the last ad on the page, used as a tie-breaker
+ */
+public record AdCursor(AdSort sort, long key, int id) {
+    private static final String SEPARATOR = ":";
+
+    public String encode() {
+        String value = sort.name() + SEPARATOR + key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Restores a cursor from its opaque form.
+     *
+     * @param cursor the value previously returned by {@link #encode()}
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the value is not a valid cursor
+     */
+    public static AdCursor decode(String cursor) {
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = value.split(SEPARATOR);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        return new AdCursor(AdSort.valueOf(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+    }
+}
@@ -0,0 +1,15 @@
+package ru.ads_online.pojo.dto.ad;
+
+/**
+ * Restrictions and ordering of an ad feed request. {@code null} restrictions are not applied.
+ *
+ * @param minPrice lowest price of a returned ad
+ * @param maxPrice highest price of a returned ad
+ * @param authorId ID of the author of returned ads
+ * @param sort     ordering of the feed
+ */
+public record AdFilter(Integer minPrice, Integer maxPrice, Integer authorId, AdSort sort) {
+    public static AdFilter unfiltered() {
+        return new AdFilter(null, null, null, AdSort.ID);
+    }
+}
@@ -0,0 +1,12 @@
+package ru.ads_online.pojo.dto.ad;
+
+import java.util.List;
+
+/**
+ * One page of the ad feed.
+ *
+ * @param ads  ads on the page
+ * @param next position right after the last ad, {@code null} if this is the last page
+ */
+public record AdPage(List<Ad> ads, AdCursor next) {
+}
@@ -0,0 +1,14 @@
+package ru.ads_online.pojo.dto.ad;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@Data
+@Accessors(chain = true)
+public class AdSearchResult {
+    private int count;
+    private List<Ad> results;
+    private List<PriceRange> priceRanges;
+}
@@ -0,0 +1,30 @@
+package ru.ads_online.pojo.dto.ad;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Orderings of the ad feed. Without an explicit ordering the feed is ordered by ID.
+ */
+public enum AdSort {
+    ID,
+    PRICE,
+    NEWEST;
+
+    /**
+     * Resolves an ordering from its request parameter value.
+     *
+     * @param value the case-insensitive name of the ordering, or {@code null} for the default one
+     * @return the ordering
+     * @throws IllegalArgumentException if there is no ordering with this name
+     */
+    public static AdSort of(String value) {
+        if (value == null) {
+            return ID;
+        }
+        return Arrays.stream(values())
+                .filter(sort -> sort.name().equals(value.toUpperCase(Locale.ROOT)))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown sort: " + value));
+    }
+}
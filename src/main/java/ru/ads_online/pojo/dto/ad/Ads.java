@@ -10,4 +10,5 @@ import java.util.List;
 public class Ads {
     private int count;
     private List<Ad> results;
+    private String next;
 }
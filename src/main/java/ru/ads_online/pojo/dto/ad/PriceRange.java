@@ -0,0 +1,12 @@
+package ru.ads_online.pojo.dto.ad;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+@Data
+@Accessors(chain = true)
+public class PriceRange {
+    private int from;
+    private Integer to;
+    private long count;
+}
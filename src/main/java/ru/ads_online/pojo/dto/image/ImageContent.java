@@ -0,0 +1,15 @@
+package ru.ads_online.pojo.dto.image;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * An image together with the metadata needed for its response headers, so they are written without
+ * reading the image bytes.
+ *
+ * @param content     the image bytes, read only as they are written out, with the length recorded at upload
+ *                    where there is one
+ * @param contentType MIME type of the image
+ * @param hash        SHA-256 of the image bytes, or {@code null} while they are still a large object
+ */
+public record ImageContent(Resource content, String contentType, String hash) {
+}
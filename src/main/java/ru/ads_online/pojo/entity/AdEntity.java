@@ -10,7 +10,8 @@ import lombok.experimental.Accessors;
 @Accessors(chain = true)
 public class AdEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ad_seq")
+    @SequenceGenerator(name = "ad_seq", sequenceName = "ad_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private int id;
 
@@ -26,6 +27,20 @@ public class AdEntity {
     @Column(name = "image", nullable = false)
     private String image;
 
+    @Column(name = "created_at", nullable = false)
+    private long createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private long updatedAt;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    // Only written by AdRepository.incrementCommentsVersion, so ad updates neither change nor conflict with it
+    @Column(name = "comments_version", nullable = false, insertable = false, updatable = false)
+    private long commentsVersion;
+
     @ManyToOne
     @JoinColumn(name = "author_id", referencedColumnName = "id")
     private UserEntity author;
@@ -10,13 +10,17 @@ import lombok.experimental.Accessors;
 @Accessors(chain = true)
 public class CommentEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "comment_seq")
+    @SequenceGenerator(name = "comment_seq", sequenceName = "comment_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private int id;
     @Column(name = "created_at", nullable = false)
     private long createdAt;
     @Column(name = "text", nullable = false)
     private String text;
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
     @ManyToOne
     @JoinColumn(name = "ad_id", referencedColumnName = "id")
     private AdEntity adEntity;
@@ -10,11 +10,27 @@ import lombok.experimental.Accessors;
 @Accessors(chain = true)
 public class ImageEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_seq")
+    @SequenceGenerator(name = "image_seq", sequenceName = "image_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private int id;
 
-    @Lob
-    @Column(name = "image", nullable = false)
-    private byte[] image;
+    /**
+     * Key of the image bytes in {@link ru.ads_online.storage.ImageStorage}, {@code null} while the bytes are
+     * still a large object in the {@code image} column, see {@link ru.ads_online.repository.ImageLobRepository}.
+     */
+    @Column(name = "storage_key")
+    private String storageKey;
+
+    /**
+     * MIME type detected from the bytes when they were stored, {@code null} for images stored before it was kept.
+     */
+    @Column(name = "content_type")
+    private String contentType;
+
+    /**
+     * Length of the image bytes, {@code null} for images stored before it was kept.
+     */
+    @Column(name = "size")
+    private Long size;
 }
\ No newline at end of file
@@ -11,7 +11,8 @@ import ru.ads_online.pojo.dto.user.Role;
 @Accessors(chain = true)
 public class UserEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_seq", allocationSize = 50)
     private int id;
     @Column(name = "username", nullable = false, unique = true)
     private String username;
@@ -27,4 +28,7 @@ public class UserEntity {
     private Role role;
     @Column(name = "image")
     private String image;
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
 }
@@ -0,0 +1,24 @@
+package ru.ads_online.pojo.projection;
+
+/**
+ * Columns of an ad with its author's contact details read by native queries, mapped by column alias.
+ */
+public interface AdDetails {
+    int getId();
+
+    String getAuthorFirstName();
+
+    String getAuthorLastName();
+
+    String getDescription();
+
+    String getEmail();
+
+    String getImage();
+
+    String getPhone();
+
+    int getPrice();
+
+    String getTitle();
+}
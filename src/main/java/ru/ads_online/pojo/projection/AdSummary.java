@@ -0,0 +1,16 @@
+package ru.ads_online.pojo.projection;
+
+/**
+ * Columns of an ad listing row read by native queries, mapped by column alias.
+ */
+public interface AdSummary {
+    int getId();
+
+    int getAuthorId();
+
+    String getImage();
+
+    int getPrice();
+
+    String getTitle();
+}
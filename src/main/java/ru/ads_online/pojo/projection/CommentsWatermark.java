@@ -0,0 +1,13 @@
+package ru.ads_online.pojo.projection;
+
+/**
+ * Aggregate state of the comments of one ad, mapped by alias. Every created, updated or deleted comment bumps
+ * the ad's comments version, whatever ID the comment has: IDs come from per-node blocks of the sequence, so a
+ * new comment may get an ID below existing ones. An update of a comment author raises the version sum, as row
+ * versions only grow.
+ */
+public interface CommentsWatermark {
+    long getCommentsVersion();
+
+    long getVersionSum();
+}
@@ -0,0 +1,10 @@
+package ru.ads_online.pojo.projection;
+
+/**
+ * Number of ads that fall into one price bucket, mapped by column alias.
+ */
+public interface PriceBucketCount {
+    int getBucket();
+
+    long getCount();
+}
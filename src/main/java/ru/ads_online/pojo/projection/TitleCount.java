@@ -0,0 +1,10 @@
+package ru.ads_online.pojo.projection;
+
+/**
+ * Number of ads sharing one title, mapped by alias.
+ */
+public interface TitleCount {
+    String getTitle();
+
+    long getCount();
+}
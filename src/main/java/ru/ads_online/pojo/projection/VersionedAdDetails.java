@@ -0,0 +1,9 @@
+package ru.ads_online.pojo.projection;
+
+/**
+ * Ad details together with their version: the sum of the ad and author row versions, which grows with every
+ * change of either row. Mapped by alias.
+ */
+public interface VersionedAdDetails extends AdDetails {
+    long getVersion();
+}
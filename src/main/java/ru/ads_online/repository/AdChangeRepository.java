@@ -0,0 +1,131 @@
+package ru.ads_online.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only log of ad writes, read in the order of the writing transactions' IDs. Transaction IDs are taken
+ * when a transaction starts writing, not when it commits, so a change is only read once no transaction that
+ * might still commit a change before it is running: that is, once its transaction ID is below the oldest
+ * one still running. Changes older than the retention are pruned, and {@link #findHorizon()} tells how far.
+ */
+@Repository
+@RequiredArgsConstructor
+public class AdChangeRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private static final RowMapper<AdChange> AD_CHANGE_MAPPER = (rs, rowNum) ->
+            new AdChange(rs.getLong("txid"), rs.getInt("ad_id"), rs.getBoolean("deleted"));
+
+    /**
+     * Records a change of the current transaction. Changes are queued and written in one JDBC batch right
+     * before the transaction commits, so recording a change per created ad adds no round trip per ad.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void save(int adId, boolean deleted) {
+        pendingChanges().add(new Object[]{adId, deleted});
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> pendingChanges() {
+        List<Object[]> pending = (List<Object[]>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+
+        List<Object[]> newPending = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, newPending);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                jdbcTemplate.batchUpdate("INSERT INTO ad_change (ad_id, deleted) VALUES (?, ?)", newPending);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(AdChangeRepository.this);
+            }
+        });
+        return newPending;
+    }
+
+    /**
+     * Returns changes of transactions after the given one that can no longer be preceded by another change,
+     * in transaction order.
+     */
+    @Transactional(readOnly = true)
+    public List<AdChange> findSettledAfter(long txid, int limit) {
+        return jdbcTemplate.query("SELECT txid, ad_id, deleted FROM ad_change " +
+                        "WHERE txid > ? AND txid < pg_snapshot_xmin(pg_current_snapshot())::text::bigint " +
+                        "ORDER BY txid, id LIMIT ?",
+                AD_CHANGE_MAPPER, txid, limit);
+    }
+
+    /**
+     * Returns all changes of one transaction.
+     */
+    @Transactional(readOnly = true)
+    public List<AdChange> findByTxid(long txid) {
+        return jdbcTemplate.query("SELECT txid, ad_id, deleted FROM ad_change WHERE txid = ? ORDER BY id",
+                AD_CHANGE_MAPPER, txid);
+    }
+
+    /**
+     * Returns the latest transaction every change of which, and of every transaction before it, is settled.
+     */
+    @Transactional(readOnly = true)
+    public long findSettledWatermark() {
+        return jdbcTemplate.queryForObject("SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint - 1",
+                Long.class);
+    }
+
+    /**
+     * Returns the transaction of the latest settled change, or the horizon if no change is retained. It only
+     * grows, and it grows with every change once the change is settled.
+     */
+    @Transactional(readOnly = true)
+    public long findLastSettledTxid() {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(txid), (SELECT txid FROM ad_change_horizon)) " +
+                        "FROM ad_change WHERE txid < pg_snapshot_xmin(pg_current_snapshot())::text::bigint",
+                Long.class);
+    }
+
+    /**
+     * Returns the latest transaction whose changes have been pruned: changes after an earlier watermark
+     * may be missing.
+     */
+    @Transactional(readOnly = true)
+    public long findHorizon() {
+        return jdbcTemplate.queryForObject("SELECT txid FROM ad_change_horizon", Long.class);
+    }
+
+    /**
+     * Deletes changes made before the given time and moves the horizon past them, in one statement, so no
+     * change can be deleted without the horizon covering it.
+     *
+     * @return number of changes deleted
+     */
+    @Transactional
+    public int deleteOlderThan(Instant before) {
+        return jdbcTemplate.queryForObject("WITH pruned AS (DELETE FROM ad_change WHERE created_at < ? RETURNING txid), " +
+                        "horizon AS (UPDATE ad_change_horizon SET txid = GREATEST(txid, (SELECT MAX(txid) FROM pruned))) " +
+                        "SELECT COUNT(*) FROM pruned",
+                Integer.class, Timestamp.from(before));
+    }
+
+    /**
+     * @param txid ID of the transaction that made the change
+     */
+    public record AdChange(long txid, int adId, boolean deleted) {
+    }
+}
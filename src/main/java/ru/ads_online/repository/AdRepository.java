@@ -1,11 +1,103 @@
 package ru.ads_online.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.ads_online.pojo.dto.ad.Ad;
 import ru.ads_online.pojo.entity.AdEntity;
+import ru.ads_online.pojo.projection.AdDetails;
+import ru.ads_online.pojo.projection.AdSummary;
+import ru.ads_online.pojo.projection.PriceBucketCount;
+import ru.ads_online.pojo.projection.TitleCount;
+import ru.ads_online.pojo.projection.VersionedAdDetails;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface AdRepository extends JpaRepository<AdEntity, Integer> {
-    Optional<List<AdEntity>> findAllByAuthorId(int id);
+public interface AdRepository extends JpaRepository<AdEntity, Integer>, AdRepositoryCustom {
+    List<Integer> PRICE_BUCKET_BOUNDS = List.of(1000, 10000, 100000, 1000000);
+
+    @Query("SELECT new ru.ads_online.pojo.dto.ad.Ad(a.author.id, a.image, a.id, a.price, a.title) " +
+            "FROM AdEntity a WHERE a.id IN :ids")
+    List<Ad> findAdsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Reads an ad's details and their version in one statement, so both come from the same row versions.
+     */
+    @Query("SELECT a.id AS id, u.firstName AS authorFirstName, u.lastName AS authorLastName, " +
+            "a.description AS description, u.username AS email, a.image AS image, u.phone AS phone, " +
+            "a.price AS price, a.title AS title, a.version + u.version AS version " +
+            "FROM AdEntity a JOIN a.author u WHERE a.id = :id")
+    Optional<VersionedAdDetails> findVersionedAdDetailsById(@Param("id") int id);
+
+    /**
+     * Reads the details of all listed ads in one statement. The IDs are bound as a single array parameter,
+     * so the statement text and its plan do not depend on how many IDs are passed. Missing IDs are skipped
+     * and rows come in no particular order.
+     */
+    @Query(value = "SELECT a.id AS \"id\", u.first_name AS \"authorFirstName\", u.last_name AS \"authorLastName\", " +
+            "a.description AS \"description\", u.username AS \"email\", a.image AS \"image\", " +
+            "u.phone AS \"phone\", a.price AS \"price\", a.title AS \"title\" " +
+            "FROM ad a JOIN \"user\" u ON u.id = a.author_id " +
+            "WHERE a.id = ANY(:ids)", nativeQuery = true)
+    List<AdDetails> findAdDetailsByIdIn(@Param("ids") Integer[] ids);
+
+    /**
+     * Marks a comment of the ad as created, updated or deleted. Leaves the ad's own version alone, so the ad
+     * is not taken for changed and concurrent updates of the ad do not conflict with its comments.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE ad SET comments_version = comments_version + 1 WHERE id = :id", nativeQuery = true)
+    void incrementCommentsVersion(@Param("id") int adId);
+
+    @Query(value = "SELECT a.id AS \"id\", a.author_id AS \"authorId\", a.image AS \"image\", " +
+            "a.price AS \"price\", a.title AS \"title\" " +
+            "FROM ad a, websearch_to_tsquery('russian', :query) q " +
+            "WHERE a.search_vector @@ q AND a.price BETWEEN :minPrice AND :maxPrice " +
+            "ORDER BY ts_rank(a.search_vector, q) DESC, a.id " +
+            "LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<AdSummary> search(@Param("query") String query,
+                           @Param("minPrice") int minPrice,
+                           @Param("maxPrice") int maxPrice,
+                           @Param("limit") int limit,
+                           @Param("offset") long offset);
+
+    /**
+     * Counts the ads matching the query per price bucket. Bucket {@code 0} holds prices below the first bound
+     * and bucket {@code n} holds prices from the {@code n}-th bound upwards, see {@link #PRICE_BUCKET_BOUNDS}.
+     */
+    default List<PriceBucketCount> countByPriceBucket(String query) {
+        return countByPriceBucket(query, PRICE_BUCKET_BOUNDS.toArray(Integer[]::new));
+    }
+
+    /**
+     * Counts the ads matching the query per price bucket, with the ascending bucket bounds bound as one array.
+     */
+    @Query(value = "SELECT width_bucket(a.price, CAST(:bounds AS integer[])) AS \"bucket\", " +
+            "count(*) AS \"count\" " +
+            "FROM ad a, websearch_to_tsquery('russian', :query) q " +
+            "WHERE a.search_vector @@ q " +
+            "GROUP BY 1", nativeQuery = true)
+    List<PriceBucketCount> countByPriceBucket(@Param("query") String query, @Param("bounds") Integer[] bounds);
+
+    @Query("SELECT a.title AS title, count(a) AS count FROM AdEntity a GROUP BY a.title")
+    List<TitleCount> countByTitle();
+
+    @Query(value = "SELECT a.title FROM ad a WHERE :query <% a.title GROUP BY a.title " +
+            "ORDER BY word_similarity(:query, a.title) DESC, count(*) DESC " +
+            "LIMIT :limit", nativeQuery = true)
+    List<String> findSimilarTitles(@Param("query") String query, @Param("limit") int limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new ru.ads_online.pojo.dto.ad.Ad(a.author.id, a.image, a.id, a.price, a.title) " +
+            "FROM AdEntity a ORDER BY a.id")
+    Stream<Ad> streamAll();
 }
@@ -0,0 +1,18 @@
+package ru.ads_online.repository;
+
+import ru.ads_online.pojo.dto.ad.AdCursor;
+import ru.ads_online.pojo.dto.ad.AdFilter;
+import ru.ads_online.pojo.dto.ad.AdPage;
+
+public interface AdRepositoryCustom {
+
+    /**
+     * Returns the ads matching the filter that follow the cursor in the filter's ordering.
+     *
+     * @param filter restrictions and ordering of the feed
+     * @param after  position of the last ad already returned in the same ordering, or {@code null} for the first page
+     * @param limit  maximum number of ads on the page
+     * @return the page and the position of its last ad, if more ads follow
+     */
+    AdPage findPage(AdFilter filter, AdCursor after, int limit);
+}
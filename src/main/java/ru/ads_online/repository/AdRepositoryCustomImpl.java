@@ -0,0 +1,91 @@
+package ru.ads_online.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.*;
+import lombok.RequiredArgsConstructor;
+import ru.ads_online.pojo.dto.ad.*;
+import ru.ads_online.pojo.entity.AdEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class AdRepositoryCustomImpl implements AdRepositoryCustom {
+    private final EntityManager entityManager;
+
+    @Override
+    public AdPage findPage(AdFilter filter, AdCursor after, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<AdEntity> ad = query.from(AdEntity.class);
+        Path<Integer> id = ad.get("id");
+        Path<Integer> price = ad.get("price");
+        Path<Integer> authorId = ad.get("author").get("id");
+        Path<Long> createdAt = ad.get("createdAt");
+        Path<? extends Number> sortKey = switch (filter.sort()) {
+            case ID -> id;
+            case PRICE -> price;
+            case NEWEST -> createdAt;
+        };
+        boolean descending = filter.sort() == AdSort.NEWEST;
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.minPrice() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(price, filter.minPrice()));
+        }
+        if (filter.maxPrice() != null) {
+            predicates.add(cb.lessThanOrEqualTo(price, filter.maxPrice()));
+        }
+        if (filter.authorId() != null) {
+            predicates.add(cb.equal(authorId, filter.authorId()));
+        }
+        if (after != null) {
+            predicates.add(switch (filter.sort()) {
+                case ID -> isAfter(cb, id, (int) after.key(), id, after.id(), descending);
+                case PRICE -> isAfter(cb, price, (int) after.key(), id, after.id(), descending);
+                case NEWEST -> isAfter(cb, createdAt, after.key(), id, after.id(), descending);
+            });
+        }
+
+        query.multiselect(authorId, ad.get("image"), id, price, ad.get("title"), sortKey)
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(descending
+                        ? List.of(cb.desc(sortKey), cb.desc(id))
+                        : List.of(cb.asc(sortKey), cb.asc(id)));
+
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setMaxResults(limit + 1)
+                .getResultList();
+
+        List<Ad> ads = rows.stream()
+                .limit(limit)
+                .map(row -> new Ad(row.get(0, Integer.class), row.get(1, String.class), row.get(2, Integer.class),
+                        row.get(3, Integer.class), row.get(4, String.class)))
+                .toList();
+        AdCursor next = null;
+        if (rows.size() > limit) {
+            Tuple last = rows.get(limit - 1);
+            next = new AdCursor(filter.sort(), last.get(5, Number.class).longValue(), last.get(2, Integer.class));
+        }
+        return new AdPage(ads, next);
+    }
+
+    /**
+     * Keyset condition for rows strictly after ({@code key}, {@code id}) in the given direction. The redundant bound
+     * on the key alone lets the planner start a range scan of the (key, id) index right at the cursor.
+     */
+    private static <Y extends Comparable<? super Y>> Predicate isAfter(CriteriaBuilder cb,
+                                                                       Expression<Y> key, Y keyValue,
+                                                                       Expression<Integer> id, int idValue,
+                                                                       boolean descending) {
+        if (descending) {
+            return cb.and(
+                    cb.lessThanOrEqualTo(key, keyValue),
+                    cb.or(cb.lessThan(key, keyValue), cb.and(cb.equal(key, keyValue), cb.lessThan(id, idValue))));
+        }
+        return cb.and(
+                cb.greaterThanOrEqualTo(key, keyValue),
+                cb.or(cb.greaterThan(key, keyValue), cb.and(cb.equal(key, keyValue), cb.greaterThan(id, idValue))));
+    }
+}
@@ -5,13 +5,20 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import ru.ads_online.pojo.dto.comment.Comment;
 import ru.ads_online.pojo.entity.CommentEntity;
+import ru.ads_online.pojo.projection.CommentsWatermark;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface CommentRepository extends JpaRepository<CommentEntity, Integer> {
     @Query("SELECT new ru.ads_online.pojo.dto.comment.Comment(u.id, u.image, u.firstName, c.createdAt, c.id, c.text)" +
             "FROM CommentEntity c JOIN UserEntity u on c.author = u WHERE c.adEntity.id = :id")
     List<Comment> findAllByAdId(@Param("id") int adId);
 
+    @Query("SELECT a.commentsVersion AS commentsVersion, COALESCE(SUM(c.version + u.version), 0) AS versionSum " +
+            "FROM AdEntity a LEFT JOIN CommentEntity c ON c.adEntity = a LEFT JOIN c.author u " +
+            "WHERE a.id = :id GROUP BY a.id, a.commentsVersion")
+    Optional<CommentsWatermark> findWatermarkByAdId(@Param("id") int adId);
+
     void deleteByAdEntityId(int id);
 }
\ No newline at end of file
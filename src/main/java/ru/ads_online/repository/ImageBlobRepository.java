@@ -0,0 +1,97 @@
+package ru.ads_online.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reference counts of the contents in {@link ru.ads_online.storage.ImageStorage}, one row per storage key.
+ * Every image pointing at a key holds one reference, so images with the same bytes share one stored copy,
+ * which is deleted when the last of them goes. Changing a count locks its row until the transaction ends,
+ * which orders a new reference against the removal of the last one.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageBlobRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Adds a reference to the content, recording it if it has none yet.
+     */
+    @Transactional
+    public void acquire(String storageKey) {
+        jdbcTemplate.update("INSERT INTO image_blob (storage_key, ref_count) VALUES (?, 1) " +
+                "ON CONFLICT (storage_key) DO UPDATE SET ref_count = image_blob.ref_count + 1", storageKey);
+    }
+
+    /**
+     * Locks the rows of the contents in key order, recording contents without a row at zero first. A transaction
+     * changing the counts of several contents locks them all here beforehand, so two of them changing the same
+     * contents in opposite directions wait for each other instead of deadlocking.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lock(Collection<String> storageKeys) {
+        String[] sortedKeys = storageKeys.stream().sorted().distinct().toArray(String[]::new);
+        jdbcTemplate.update("INSERT INTO image_blob (storage_key, ref_count) " +
+                "SELECT storage_key, 0 FROM unnest(?::varchar[]) AS storage_key ORDER BY storage_key " +
+                "ON CONFLICT (storage_key) DO NOTHING", (Object) sortedKeys);
+        jdbcTemplate.queryForList("SELECT storage_key FROM image_blob WHERE storage_key = ANY(?) " +
+                "ORDER BY storage_key FOR UPDATE", String.class, (Object) sortedKeys);
+    }
+
+    /**
+     * Drops a reference to the content. The row is kept at zero until {@link #deleteUnreferenced} removes it.
+     *
+     * @return references left, {@code 0} also if the content was not recorded
+     */
+    @Transactional
+    public int release(String storageKey) {
+        return jdbcTemplate.queryForList("UPDATE image_blob SET ref_count = ref_count - 1 " +
+                        "WHERE storage_key = ? AND ref_count > 0 RETURNING ref_count", Integer.class, storageKey).stream()
+                .findFirst()
+                .orElse(0);
+    }
+
+    /**
+     * Returns contents nothing refers to any more whose removal has not happened, for instance because it failed.
+     */
+    public List<String> findUnreferenced(int limit) {
+        return jdbcTemplate.queryForList("SELECT storage_key FROM image_blob WHERE ref_count = 0 LIMIT ?",
+                String.class, limit);
+    }
+
+    /**
+     * Returns those of the contents that have a row, referenced or not.
+     */
+    public Set<String> findRecorded(Collection<String> storageKeys) {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT storage_key FROM image_blob WHERE storage_key = ANY(?)",
+                String.class, (Object) storageKeys.toArray(String[]::new)));
+    }
+
+    /**
+     * Removes the content's row if nothing refers to it any more and, in that case, runs the action before
+     * the removal commits. Content without a row is recorded at zero first, so it is locked the same way.
+     * A concurrent {@link #acquire} of the same content waits until then. Runs in a transaction of its own,
+     * so it also works after the calling transaction has completed.
+     *
+     * @return whether nothing referred to the content
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean deleteUnreferenced(String storageKey, Runnable action) {
+        jdbcTemplate.update("INSERT INTO image_blob (storage_key, ref_count) VALUES (?, 0) " +
+                "ON CONFLICT (storage_key) DO NOTHING", storageKey);
+        boolean deleted = jdbcTemplate.update("DELETE FROM image_blob WHERE storage_key = ? AND ref_count = 0",
+                storageKey) > 0;
+        if (deleted) {
+            action.run();
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,127 @@
+package ru.ads_online.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.largeobject.LargeObject;
+import org.postgresql.largeobject.LargeObjectManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Access to image bytes still kept as Postgres large objects in the {@code image.image} column, from before
+ * images were moved to {@link ru.ads_online.storage.ImageStorage}. Large objects can only be read inside a
+ * transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageLobRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns images that are still large objects, in ID order from after the given ID, without locking them.
+     */
+    public List<LegacyImage> findUnmigrated(int afterId, int limit) {
+        return jdbcTemplate.query("SELECT id, image FROM image WHERE storage_key IS NULL AND image IS NOT NULL " +
+                        "AND id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new LegacyImage(rs.getInt("id"), rs.getLong("image")),
+                afterId, limit);
+    }
+
+    /**
+     * Claims the image for the calling transaction's migration if no other transaction has claimed it and it is
+     * still the given large object. The claim is a transaction-level advisory lock, keyed by the image table and
+     * the image ID, so it does not make requests reading the image wait. It is released when the calling
+     * transaction ends, by which time a migrated image no longer passes the check.
+     *
+     * @return whether the image was claimed
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean claimUnmigrated(LegacyImage image) {
+        Boolean claimed = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock('image'::regclass::oid::int, ?)",
+                Boolean.class, image.id());
+        return Boolean.TRUE.equals(claimed) && !jdbcTemplate.queryForList(
+                "SELECT id FROM image WHERE id = ? AND image = ?::oid AND storage_key IS NULL",
+                Integer.class, image.id(), image.oid()).isEmpty();
+    }
+
+    /**
+     * Locks the image if it is still the given large object, waiting for transactions reading or changing it.
+     * The lock is held until the calling transaction ends.
+     *
+     * @return whether the image is still the large object
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean lockUnmigrated(LegacyImage image) {
+        return !jdbcTemplate.queryForList("SELECT id FROM image WHERE id = ? AND image = ?::oid AND storage_key IS NULL " +
+                "FOR UPDATE", Integer.class, image.id(), image.oid()).isEmpty();
+    }
+
+    /**
+     * Passes a stream over the image's large object to the reader. The row is locked against a concurrent
+     * migration, and if the image has been migrated meanwhile nothing is read.
+     *
+     * @return what the reader returned, or empty if the image has no large object
+     */
+    @Transactional
+    public <T> Optional<T> readImage(int imageId, LobReader<T> reader) {
+        return jdbcTemplate.queryForList("SELECT image FROM image WHERE id = ? AND image IS NOT NULL FOR SHARE",
+                        Long.class, imageId).stream()
+                .findFirst()
+                .map(oid -> read(oid, reader));
+    }
+
+    /**
+     * Passes a stream over the large object to the reader, without loading it into memory first.
+     */
+    @Transactional(readOnly = true)
+    public <T> T read(long oid, LobReader<T> reader) {
+        return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+            LargeObjectManager largeObjects = connection.unwrap(PGConnection.class).getLargeObjectAPI();
+            LargeObject largeObject = largeObjects.open(oid, LargeObjectManager.READ);
+            try (InputStream data = largeObject.getInputStream()) {
+                return reader.read(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                largeObject.close();
+            }
+        });
+    }
+
+    /**
+     * Points the image at its stored copy, records the copy's type and length and frees its large object.
+     */
+    @Transactional
+    public void markMigrated(int imageId, String storageKey, String contentType, long size) {
+        discard(imageId);
+        jdbcTemplate.update("UPDATE image SET storage_key = ?, content_type = ?, size = ? WHERE id = ?",
+                storageKey, contentType, size, imageId);
+    }
+
+    /**
+     * Frees the large object of the image, if it still has one. Postgres keeps large objects
+     * after the row referencing them is updated or deleted.
+     */
+    @Transactional
+    public void discard(int imageId) {
+        jdbcTemplate.queryForList("SELECT lo_unlink(image) FROM image WHERE id = ? AND image IS NOT NULL", imageId);
+        jdbcTemplate.update("UPDATE image SET image = NULL WHERE id = ? AND image IS NOT NULL", imageId);
+    }
+
+    public record LegacyImage(int id, long oid) {
+    }
+
+    @FunctionalInterface
+    public interface LobReader<T> {
+        T read(InputStream data) throws IOException;
+    }
+}
@@ -0,0 +1,207 @@
+package ru.ads_online.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.ads_online.event.AdChangedEvent;
+import ru.ads_online.event.ChangesMissedEvent;
+import ru.ads_online.pojo.projection.TitleCount;
+import ru.ads_online.repository.AdRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * Completes ad titles from an in-memory sorted dictionary of all titles. Titles starting with the typed text
+ * come first, topped up with titles starting with the text at one typo's distance, so a misspelled word is
+ * completed without a query. The database is only asked, by trigram similarity, before the dictionary has been
+ * loaded and when the dictionary has nothing at all for the text.
+ * <p>
+ * The dictionary follows the ad changes of this node and, through the invalidation bus, of the other nodes. It is
+ * rebuilt from the database at a fixed interval and after missed changes, so it never drifts for longer.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TitleSuggester {
+    private static final char ORIGINAL_TITLE_SEPARATOR = '\u0000';
+    private static final int MAX_SCANNED_TITLES = 1000;
+    private static final int MAX_SCANNED_TITLES_PER_TYPO = 100;
+    /**
+     * Shorter text has too many neighbours one typo away to make useful suggestions.
+     */
+    private static final int MIN_TYPO_TOLERANT_LENGTH = 3;
+    /**
+     * Bounds the scans made for one query however long it is, whatever characters the titles use.
+     */
+    static final int MAX_TYPO_VARIANTS = 1000;
+
+    private final AdRepository adRepository;
+    private volatile Dictionary dictionary;
+
+    /**
+     * Loads the dictionary unless it has already been loaded.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (dictionary != null) {
+            return;
+        }
+        synchronized (this) {
+            if (dictionary == null) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * Replaces the dictionary with one freshly read from the database. Changes applied to the old dictionary
+     * while the new one is read are only reflected once the new one is in place.
+     */
+    @EventListener(ChangesMissedEvent.class)
+    @Scheduled(fixedDelayString = "${search.suggest.rebuild-interval}", initialDelayString = "${search.suggest.rebuild-interval}")
+    public synchronized void rebuild() {
+        List<TitleCount> titleCounts = adRepository.countByTitle();
+        Dictionary newDictionary = new Dictionary(new ConcurrentSkipListMap<>(), ConcurrentHashMap.newKeySet());
+        titleCounts.forEach(titleCount -> newDictionary.add(titleCount.getTitle(), (int) titleCount.getCount()));
+        dictionary = newDictionary;
+        log.info("Loaded {} distinct ad titles for suggestions", titleCounts.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAdChanged(AdChangedEvent event) {
+        Dictionary current = dictionary;
+        if (current == null || Objects.equals(event.previousTitle(), event.title())) {
+            return;
+        }
+        if (event.previousTitle() != null) {
+            current.titles().computeIfPresent(toKey(event.previousTitle()), (key, count) -> count > 1 ? count - 1 : null);
+        }
+        if (event.title() != null) {
+            current.add(event.title(), 1);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} titles starting with the query, most used first, topped up with titles
+     * starting with the query at one typo's distance.
+     *
+     * @param query the text typed so far
+     * @param limit maximum number of suggestions
+     * @return distinct suggested titles
+     */
+    public List<String> suggest(String query, int limit) {
+        Dictionary current = dictionary;
+        if (current == null) {
+            return adRepository.findSimilarTitles(query, limit);
+        }
+
+        String prefix = normalize(query);
+        Set<String> suggestions = new LinkedHashSet<>(current.findMostUsed(List.of(prefix), MAX_SCANNED_TITLES, limit));
+        if (suggestions.size() < limit && prefix.length() >= MIN_TYPO_TOLERANT_LENGTH) {
+            suggestions.addAll(current.findMostUsed(typoVariants(prefix, current.alphabet()), MAX_SCANNED_TITLES_PER_TYPO, limit));
+        }
+        if (suggestions.isEmpty()) {
+            suggestions.addAll(adRepository.findSimilarTitles(query, limit));
+        }
+        return suggestions.stream()
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Returns the texts one deletion, substitution, insertion or transposition of adjacent characters away
+     * from the given one, at most {@link #MAX_TYPO_VARIANTS} of them. Substituted and inserted characters are
+     * those of the titles written in the scripts of the text, so titles mixing scripts do not multiply the
+     * variants of every query.
+     */
+    static Set<String> typoVariants(String text, Set<Character> alphabet) {
+        Set<Character.UnicodeScript> scripts = EnumSet.noneOf(Character.UnicodeScript.class);
+        text.codePoints().forEach(c -> scripts.add(Character.UnicodeScript.of(c)));
+        List<Character> characters = alphabet.stream()
+                .filter(c -> scripts.contains(Character.UnicodeScript.of(c)))
+                .toList();
+
+        Set<String> variants = new HashSet<>();
+        StringBuilder variant = new StringBuilder(text.length() + 1);
+        for (int i = 0; i <= text.length() && variants.size() < MAX_TYPO_VARIANTS; i++) {
+            String head = text.substring(0, i);
+            String tail = text.substring(i);
+            if (!tail.isEmpty()) {
+                variants.add(head + tail.substring(1));
+            }
+            if (tail.length() > 1) {
+                variants.add(head + tail.charAt(1) + tail.charAt(0) + tail.substring(2));
+            }
+            for (char c : characters) {
+                variant.setLength(0);
+                variants.add(variant.append(head).append(c).append(tail).toString());
+                if (!tail.isEmpty() && tail.charAt(0) != c) {
+                    variant.setLength(0);
+                    variants.add(variant.append(head).append(c).append(tail, 1, tail.length()).toString());
+                }
+            }
+        }
+        variants.remove(text);
+        return variants.size() > MAX_TYPO_VARIANTS
+                ? variants.stream().limit(MAX_TYPO_VARIANTS).collect(Collectors.toSet())
+                : variants;
+    }
+
+    private static String toKey(String title) {
+        return normalize(title) + ORIGINAL_TITLE_SEPARATOR + title;
+    }
+
+    private static String normalize(String text) {
+        return text.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param titles   number of ads per title, keyed by the normalized title followed by the original one,
+     *                 so a prefix of the normalized title selects a contiguous range of keys
+     * @param alphabet characters occurring in normalized titles
+     */
+    private record Dictionary(ConcurrentSkipListMap<String, Integer> titles, Set<Character> alphabet) {
+
+        void add(String title, int count) {
+            String normalized = normalize(title);
+            titles.merge(normalized + ORIGINAL_TITLE_SEPARATOR + title, count, Integer::sum);
+            normalized.chars().forEach(c -> alphabet.add((char) c));
+        }
+
+        /**
+         * Returns up to {@code limit} of the titles starting with any of the prefixes, most used first,
+         * looking at no more than {@code maxScanned} titles per prefix.
+         */
+        List<String> findMostUsed(Collection<String> prefixes, int maxScanned, int limit) {
+            Map<String, Integer> matches = new HashMap<>();
+            for (String prefix : prefixes) {
+                titles.subMap(prefix, prefix + Character.MAX_VALUE).entrySet().stream()
+                        .limit(maxScanned)
+                        .forEach(entry -> matches.put(entry.getKey(), entry.getValue()));
+            }
+
+            PriorityQueue<Map.Entry<String, Integer>> mostUsed = new PriorityQueue<>(Map.Entry.comparingByValue());
+            matches.entrySet().forEach(entry -> {
+                mostUsed.add(entry);
+                if (mostUsed.size() > limit) {
+                    mostUsed.poll();
+                }
+            });
+
+            List<String> result = new ArrayList<>(mostUsed.size());
+            while (!mostUsed.isEmpty()) {
+                String key = mostUsed.poll().getKey();
+                result.add(key.substring(key.indexOf(ORIGINAL_TITLE_SEPARATOR) + 1));
+            }
+            Collections.reverse(result);
+            return result;
+        }
+    }
+}
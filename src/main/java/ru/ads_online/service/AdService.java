@@ -2,20 +2,98 @@ package ru.ads_online.service;
 
 import org.apache.tika.mime.MimeTypeException;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ads_online.cache.AdFeedCache;
+import ru.ads_online.pojo.dto.Versioned;
 import ru.ads_online.pojo.dto.ad.Ad;
+import ru.ads_online.pojo.dto.ad.AdBatch;
+import ru.ads_online.pojo.dto.ad.AdBulkResult;
+import ru.ads_online.pojo.dto.ad.AdChanges;
+import ru.ads_online.pojo.dto.ad.AdFilter;
+import ru.ads_online.pojo.dto.ad.AdSearchResult;
 import ru.ads_online.pojo.dto.ad.Ads;
 import ru.ads_online.pojo.dto.ad.CreateOrUpdateAd;
 import ru.ads_online.pojo.dto.ad.ExtendedAd;
 import ru.ads_online.security.UserPrincipal;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 public interface AdService {
 
     /**
-     * Returns a list of all available ads and their total count.
+     * Returns one page of available ads matching the filter, starting right after the given cursor.
+     *
+     * @param filter         restrictions and ordering of the feed
+     * @param after          opaque cursor returned with the previous page, or {@code null} for the first page
+     * @param limit          maximum number of ads on the page
+     * @return the page of ads with the cursor of the next page, if there is one
+     * @throws ru.ads_online.exception.BadRequestException if the cursor is malformed
+     */
+    Ads getAllAds(AdFilter filter, String after, int limit);
+
+    /**
+     * Returns one serialized page of the unfiltered feed, ordered by ID, from the feed cache.
+     *
+     * @param after          opaque cursor returned with the previous page, or {@code null} for the first page
+     * @param limit          maximum number of ads on the page
+     * @return the page as plain and gzipped JSON
+     * @throws ru.ads_online.exception.BadRequestException if the cursor is malformed or issued for another sort
+     */
+    AdFeedCache.FeedPage getFeedPage(String after, int limit);
+
+    /**
+     * Returns ads created, updated or deleted after the given watermark, in commit order of the changes.
+     * If changes after the watermark have already been pruned, nothing is returned but a resync flag and a
+     * watermark to continue from once the client has reloaded all ads.
+     *
+     * @param since          watermark returned by the previous call, {@code 0} if there is none
+     * @param limit          maximum number of changes to read, exceeded only by the changes of one write
+     * @return current state of changed ads, IDs of deleted ads and the watermark to pass next time
+     */
+    AdChanges getChanges(long since, int limit);
+
+    /**
+     * Deletes changes older than the retention, so clients further behind are asked to resync.
+     */
+    void pruneChanges();
+
+    /**
+     * Returns the version of the whole ad collection, which changes whenever any ad is created, updated or deleted,
+     * as soon as {@link #getChanges} serves the change.
+     *
+     * @return opaque collection version
+     */
+    String getAdsVersion();
+
+    /**
+     * Returns one page of ads whose title or description match the query, most relevant first,
+     * together with the number of matching ads in each price range.
+     *
+     * @param query          search terms in web search syntax
+     * @param minPrice       lowest price of a returned ad
+     * @param maxPrice       highest price of a returned ad
+     * @param page           zero-based page number
+     * @param size           maximum number of ads on the page
+     * @return the matching ads and price range counts
+     */
+    AdSearchResult searchAds(String query, int minPrice, int maxPrice, int page, int size);
+
+    /**
+     * Returns titles of existing ads that complete the text typed so far, tolerating misspellings.
      *
-     * @return all available ads
+     * @param query          the text typed so far
+     * @param limit          maximum number of suggestions
+     * @return suggested titles, best first
      */
-    Ads getAllAds();
+    List<String> suggestTitles(String query, int limit);
+
+    /**
+     * Passes every available ad, ordered by ID, to the given action while rows are read from a database cursor,
+     * so the whole catalog is never held in memory at once.
+     *
+     * @param action         the action to perform on each ad
+     */
+    void streamAllAds(Consumer<Ad> action);
 
     /**
      * Creates and saves a new ad.
@@ -27,14 +105,35 @@ public interface AdService {
      */
     Ad addAd(UserPrincipal userDetails, CreateOrUpdateAd properties, MultipartFile image) throws MimeTypeException;
 
+    /**
+     * Creates many ads at once, the {@code n}-th image belonging to the {@code n}-th ad. Ads are written in
+     * batched inserts, a transaction per batch. An entry that is invalid or cannot be saved is reported in the
+     * result and does not prevent the other entries from being created.
+     *
+     * @param userDetails    the current user's authentication
+     * @param properties     details of the ads
+     * @param images         image files of the ads, in the same order
+     * @return the outcome of every entry, in request order
+     */
+    AdBulkResult addAds(UserPrincipal userDetails, List<CreateOrUpdateAd> properties, List<MultipartFile> images);
+
     /**
      * Returns detailed information about the ad with the specified ID.
      *
      * @param id             ID of the ad
-     * @return extended ad details
+     * @return extended ad details with their version
      * @throws ru.ads_online.exception.NotFoundException if the ad is not found
      */
-    ExtendedAd getAd(int id);
+    Versioned<ExtendedAd> getAd(int id);
+
+    /**
+     * Returns detailed information about several ads at once. Cached ads are served from the cache
+     * and the rest are read with a single query.
+     *
+     * @param ids            IDs of the ads, without duplicates
+     * @return details of the found ads in the order of their IDs, and the IDs of ads that were not found
+     */
+    AdBatch getAds(List<Integer> ids);
 
     /**
      * Deletes the ad with the specified ID.
@@ -57,12 +156,15 @@ public interface AdService {
     Ad updateAd(int id, CreateOrUpdateAd properties);
 
     /**
-     * Returns a list and count of ads posted by the currently authenticated user.
+     * Returns one page of ads posted by the currently authenticated user, ordered by ID.
      *
-     * @param userDetails the current user's authentication
-     * @return the user's ads
+     * @param userDetails    the current user's authentication
+     * @param after          opaque cursor returned with the previous page, or {@code null} for the first page
+     * @param limit          maximum number of ads on the page
+     * @return the page of the user's ads with the cursor of the next page, if there is one
+     * @throws ru.ads_online.exception.BadRequestException if the cursor is malformed
      */
-    Ads getUserAds(UserPrincipal userDetails);
+    Ads getUserAds(UserPrincipal userDetails, String after, int limit);
 
     /**
      * Updates the image of the ad with the specified ID.
@@ -15,6 +15,15 @@ public interface CommentService {
      */
     Comments getAllComments(int id);
 
+    /**
+     * Returns the version of the comment list of the specified ad.
+     *
+     * @param adId           ID of the ad
+     * @return opaque version that changes whenever a comment of the ad or one of their authors changes
+     * @throws ru.ads_online.exception.NotFoundException if the ad is not found
+     */
+    String getCommentsVersion(int adId);
+
     /**
      * Creates a new comment for the specified ad.
      *
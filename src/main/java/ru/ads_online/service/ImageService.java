@@ -1,34 +1,42 @@
 package ru.ads_online.service;
 
+import ru.ads_online.pojo.dto.image.ImageContent;
 import ru.ads_online.pojo.entity.ImageEntity;
 
+import java.io.InputStream;
+
 public interface ImageService {
     String IMAGE_URL_PREFIX = "/images/";
 
     /**
-     * Returns the image entity by its ID.
+     * Returns the image with the given ID and its stored metadata. Its length is known upfront and its bytes
+     * are read only as the resource is written out.
      *
      * @param id the ID of the requested image
-     * @return the image entity
+     * @return the image with its content type and hash
+     * @throws ru.ads_online.exception.NotFoundException if the image is not found
      */
-    ImageEntity getImage(int id);
+    ImageContent getImage(int id);
 
     /**
-     * Saves a new image.
+     * Saves a new image, detecting its content type once. The image is streamed into the storage and never
+     * held in memory whole.
      *
-     * @param image the image bytes
+     * @param image stream of the image bytes, which is not closed
      * @return the saved image entity
+     * @throws ru.ads_online.exception.ImageUploadException if the image is empty, too large or not of an allowed type
      */
-    ImageEntity uploadImage(byte[] image);
+    ImageEntity uploadImage(InputStream image);
 
     /**
      * Updates the existing image with the specified ID.
      *
      * @param id    the ID of the image to update
-     * @param image the new image bytes
+     * @param image stream of the new image bytes, which is not closed
      * @return the updated image entity
+     * @throws ru.ads_online.exception.ImageUploadException if the image is empty, too large or not of an allowed type
      */
-    ImageEntity updateImage(int id, byte[] image);
+    ImageEntity updateImage(int id, InputStream image);
 
     /**
      * Deletes the image with the specified ID.
@@ -36,4 +44,10 @@ public interface ImageService {
      * @param id the ID of the image to delete
      */
     void deleteImage(int id);
+
+    /**
+     * Deletes stored bytes no image refers to: those whose removal failed after their last reference was
+     * dropped, and those stored by uploads that never committed a reference.
+     */
+    void sweepStorage();
 }
@@ -2,6 +2,7 @@ package ru.ads_online.service;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ads_online.pojo.dto.Versioned;
 import ru.ads_online.pojo.dto.user.NewPassword;
 import ru.ads_online.pojo.dto.user.UpdateUser;
 import ru.ads_online.pojo.dto.user.User;
@@ -24,9 +25,9 @@ public interface UserService {
      * Returns data of the authenticated user.
      *
      * @param userDetails the current authenticated user
-     * @return the user data
+     * @return the user data with its version
      */
-    User getData(UserPrincipal userDetails);
+    Versioned<User> getData(UserPrincipal userDetails);
 
     /**
      * Updates data of the authenticated user.
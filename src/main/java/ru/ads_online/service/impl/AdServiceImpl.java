@@ -1,32 +1,69 @@
 package ru.ads_online.service.impl;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.mime.MimeTypeException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ads_online.cache.AdCache;
+import ru.ads_online.cache.AdFeedCache;
+import ru.ads_online.event.AdChangedEvent;
+import ru.ads_online.exception.BadRequestException;
 import ru.ads_online.exception.ImageDeletionException;
 import ru.ads_online.exception.ImageUploadException;
 import ru.ads_online.exception.NotFoundException;
 import ru.ads_online.mapper.AdMapper;
+import ru.ads_online.pojo.dto.Versioned;
 import ru.ads_online.pojo.dto.ad.Ad;
+import ru.ads_online.pojo.dto.ad.AdBatch;
+import ru.ads_online.pojo.dto.ad.AdBulkItem;
+import ru.ads_online.pojo.dto.ad.AdBulkResult;
+import ru.ads_online.pojo.dto.ad.AdChanges;
+import ru.ads_online.pojo.dto.ad.AdCursor;
+import ru.ads_online.pojo.dto.ad.AdFilter;
+import ru.ads_online.pojo.dto.ad.AdPage;
+import ru.ads_online.pojo.dto.ad.AdSearchResult;
+import ru.ads_online.pojo.dto.ad.AdSort;
 import ru.ads_online.pojo.dto.ad.Ads;
 import ru.ads_online.pojo.dto.ad.CreateOrUpdateAd;
 import ru.ads_online.pojo.dto.ad.ExtendedAd;
+import ru.ads_online.pojo.dto.ad.PriceRange;
 import ru.ads_online.pojo.entity.AdEntity;
 import ru.ads_online.pojo.entity.ImageEntity;
 import ru.ads_online.pojo.entity.UserEntity;
+import ru.ads_online.pojo.projection.VersionedAdDetails;
+import ru.ads_online.repository.AdChangeRepository;
+import ru.ads_online.repository.AdChangeRepository.AdChange;
 import ru.ads_online.repository.AdRepository;
 import ru.ads_online.repository.CommentRepository;
+import ru.ads_online.search.TitleSuggester;
 import ru.ads_online.security.UserPrincipal;
 import ru.ads_online.service.AdService;
 import ru.ads_online.service.ImageService;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -36,12 +73,123 @@ public class AdServiceImpl implements AdService {
     private final AdMapper adMapper;
     private final ImageService imageService;
     private final CommentRepository commentRepository;
+    private final AdChangeRepository adChangeRepository;
+    private final TitleSuggester titleSuggester;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AdCache adCache;
+    private final AdFeedCache adFeedCache;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+    private int batchSize;
+
+    @Value("${ad.changes.retention}")
+    private Duration changeRetention;
+
+    @Transactional(readOnly = true)
+    @Override
+    public Ads getAllAds(AdFilter filter, String after, int limit) {
+        AdCursor cursor = after == null ? null : decodeCursor(after, filter.sort());
+        AdPage page = adRepository.findPage(filter, cursor, limit);
+        return adMapper.toAds(page);
+    }
+
+    @Override
+    public AdFeedCache.FeedPage getFeedPage(String after, int limit) {
+        AdFilter filter = AdFilter.unfiltered();
+        AdCursor cursor = after == null ? null : decodeCursor(after, filter.sort());
+        return adFeedCache.getPage(cursor, limit, () -> adMapper.toAds(adRepository.findPage(filter, cursor, limit)));
+    }
+
+    /**
+     * The horizon and the changes are read from one snapshot, so pruning in between cannot drop changes unnoticed.
+     * A page never ends inside the changes of one transaction, which share one watermark.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    @Override
+    public AdChanges getChanges(long since, int limit) {
+        long horizon = adChangeRepository.findHorizon();
+        if (since < horizon) {
+            long watermark = Math.max(horizon, adChangeRepository.findSettledWatermark());
+            log.info("Changes since={} have been pruned up to {}, client has to resync", since, horizon);
+            return adMapper.toAdChanges(watermark, false, List.of(), List.of())
+                    .setResync(true);
+        }
+
+        List<AdChange> changes = adChangeRepository.findSettledAfter(since, limit + 1);
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            long splitTxid = changes.get(limit).txid();
+            changes = changes.stream()
+                    .limit(limit)
+                    .takeWhile(change -> change.txid() != splitTxid)
+                    .toList();
+            if (changes.isEmpty()) {
+                // One transaction changed more ads than the limit
+                changes = adChangeRepository.findByTxid(splitTxid);
+            }
+        }
+
+        Map<Integer, Boolean> deletedById = new LinkedHashMap<>();
+        changes.forEach(change -> deletedById.put(change.adId(), change.deleted()));
+        Set<Integer> changedIds = deletedById.entrySet().stream()
+                .filter(entry -> !entry.getValue())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        List<Ad> updated = changedIds.isEmpty() ? List.of() : adRepository.findAdsByIdIn(changedIds);
+
+        // An ad changed in this batch may already be deleted by a change the client has not read yet
+        Set<Integer> updatedIds = updated.stream().map(Ad::getPk).collect(Collectors.toSet());
+        List<Integer> deleted = deletedById.keySet().stream()
+                .filter(adId -> !updatedIds.contains(adId))
+                .toList();
+
+        long watermark = changes.isEmpty() ? since : changes.getLast().txid();
+        return adMapper.toAdChanges(watermark, hasMore, updated, deleted);
+    }
+
+    @Scheduled(fixedDelayString = "${ad.changes.prune-interval}", initialDelayString = "${ad.changes.prune-interval}")
+    @Override
+    public void pruneChanges() {
+        int pruned = adChangeRepository.deleteOlderThan(Instant.now().minus(changeRetention));
+        log.info("Pruned {} ad changes older than {}", pruned, changeRetention);
+    }
+
+    /**
+     * The version is the watermark of the latest settled change, so it follows the same commit order as
+     * {@link #getChanges}: a change that commits behind a later one cannot leave the version unchanged.
+     */
+    @Override
+    public String getAdsVersion() {
+        return String.valueOf(adChangeRepository.findLastSettledTxid());
+    }
+
+    /**
+     * The page and the price facets are read from one snapshot, so the facet counts always agree with the results.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    @Override
+    public AdSearchResult searchAds(String query, int minPrice, int maxPrice, int page, int size) {
+        List<Ad> adList = adRepository.search(query, minPrice, maxPrice, size, (long) page * size).stream()
+                .map(adMapper::toAd)
+                .toList();
+        List<PriceRange> priceRanges = adMapper.toPriceRanges(
+                adRepository.countByPriceBucket(query), AdRepository.PRICE_BUCKET_BOUNDS);
+        return adMapper.toAdSearchResult(adList, priceRanges);
+    }
+
+    @Override
+    public List<String> suggestTitles(String query, int limit) {
+        return titleSuggester.suggest(query, limit);
+    }
 
     @Transactional(readOnly = true)
     @Override
-    public Ads getAllAds() {
-        List<AdEntity> adList = new ArrayList<>(adRepository.findAll());
-        return adMapper.toAds(adList);
+    public void streamAllAds(Consumer<Ad> action) {
+        try (Stream<Ad> ads = adRepository.streamAll()) {
+            ads.forEach(action);
+        }
     }
 
     @Transactional
@@ -61,21 +209,82 @@ public class AdServiceImpl implements AdService {
             throw new MimeTypeException(message);
         }
 
-        AdEntity currentAd = adMapper.toAdEntity(adBody).setAuthor(author);
-        String imageURL = uploadImage(image);
-        return adMapper.toAd(adRepository.save(currentAd.setImage(imageURL)));
+        return createAd(author, adBody, image);
     }
 
+    /**
+     * Entries are validated up front, then created a batch at a time, each batch in its own transaction.
+     * IDs come from pooled sequences and the change log is written once per transaction, so the inserts of
+     * a batch are only sent at commit, in JDBC batches.
+     * If a batch fails, its entries are retried one per transaction to find and report the failing ones.
+     */
+    @Override
+    public AdBulkResult addAds(UserPrincipal userDetails, List<CreateOrUpdateAd> properties, List<MultipartFile> images) {
+        UserEntity author = userDetails.getUser();
+        List<AdBulkItem> items = new ArrayList<>(properties.size());
+        List<Integer> validIndexes = new ArrayList<>(properties.size());
+        for (int i = 0; i < properties.size(); i++) {
+            String error = validateBulkEntry(properties.get(i), i < images.size() ? images.get(i) : null);
+            items.add(new AdBulkItem()
+                    .setIndex(i)
+                    .setError(error));
+            if (error == null) {
+                validIndexes.add(i);
+            }
+        }
+
+        for (int from = 0; from < validIndexes.size(); from += batchSize) {
+            List<Integer> batch = validIndexes.subList(from, Math.min(from + batchSize, validIndexes.size()));
+            try {
+                List<Ad> createdAds = transactionTemplate.execute(status -> batch.stream()
+                        .map(i -> createAd(author, properties.get(i), images.get(i)))
+                        .toList());
+                for (int i = 0; i < batch.size(); i++) {
+                    items.get(batch.get(i)).setAd(createdAds.get(i));
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to create a batch of {} ads, retrying them one by one: {}", batch.size(), e.getMessage());
+                for (int i : batch) {
+                    try {
+                        items.get(i).setAd(transactionTemplate.execute(status ->
+                                createAd(author, properties.get(i), images.get(i))));
+                    } catch (RuntimeException itemException) {
+                        log.warn("Failed to create ad at index={}: {}", i, itemException.getMessage());
+                        items.get(i).setError(itemException.getMessage());
+                    }
+                }
+            }
+        }
+        return adMapper.toAdBulkResult(items);
+    }
+
+    @Override
+    public Versioned<ExtendedAd> getAd(int id) {
+        return adCache.getExtendedAd(id, adId -> {
+            VersionedAdDetails ad = adRepository.findVersionedAdDetailsById(adId)
+                    .orElseThrow(() -> adNotFound(adId));
+            return new Versioned<>(adMapper.toExtendedAd(ad), adId + "-" + ad.getVersion());
+        });
+    }
+
+    /**
+     * Ads read from the database are not put into the cache: unlike a single load, a bulk read is not
+     * guarded against an eviction that runs while it is in progress, and could cache an outdated ad.
+     */
     @Transactional(readOnly = true)
     @Override
-    public ExtendedAd getAd(int id) {
-        AdEntity currentAd = adRepository.findById(id)
-                .orElseThrow(() -> {
-                    String message = String.format("Ad with id=%d was not found", id);
-                    log.warn(message);
-                    return new NotFoundException(message);
-                });
-        return adMapper.toExtendedAd(currentAd);
+    public AdBatch getAds(List<Integer> ids) {
+        Map<Integer, ExtendedAd> adsById = new HashMap<>();
+        adCache.getPresentExtendedAds(ids).forEach((id, ad) -> adsById.put(id, ad.body()));
+
+        Integer[] uncachedIds = ids.stream()
+                .filter(id -> !adsById.containsKey(id))
+                .toArray(Integer[]::new);
+        if (uncachedIds.length > 0) {
+            adRepository.findAdDetailsByIdIn(uncachedIds)
+                    .forEach(ad -> adsById.put(ad.getId(), adMapper.toExtendedAd(ad)));
+        }
+        return adMapper.toAdBatch(ids, adsById);
     }
 
     @Transactional
@@ -92,6 +301,8 @@ public class AdServiceImpl implements AdService {
         commentRepository.deleteByAdEntityId(id);
         imageService.deleteImage(imageId);
         adRepository.delete(currentAd);
+        recordChange(id, true);
+        eventPublisher.publishEvent(new AdChangedEvent(id, currentAd.getTitle(), null));
     }
 
     @Transactional
@@ -104,23 +315,22 @@ public class AdServiceImpl implements AdService {
                     return new NotFoundException(message);
                 });
 
+        String previousTitle = currentAd.getTitle();
         currentAd.setTitle(properties.getTitle())
                 .setPrice(properties.getPrice())
-                .setDescription(properties.getDescription());
-        return adMapper.toAd(adRepository.save(currentAd));
+                .setDescription(properties.getDescription())
+                .setUpdatedAt(System.currentTimeMillis());
+        AdEntity savedAd = adRepository.save(currentAd);
+        recordChange(id, false);
+        eventPublisher.publishEvent(new AdChangedEvent(id, previousTitle, savedAd.getTitle()));
+        return adMapper.toAd(savedAd);
     }
 
     @Transactional(readOnly = true)
     @Override
-    public Ads getUserAds(UserPrincipal userDetails) {
+    public Ads getUserAds(UserPrincipal userDetails, String after, int limit) {
         int currentUserId = userDetails.getUser().getId();
-        List<AdEntity> adList = adRepository.findAllByAuthorId(currentUserId)
-                .orElseThrow(() -> {
-                    String message = "No ads found for the current user";
-                    log.warn(message);
-                    return new NotFoundException(message);
-                });
-        return adMapper.toAds(adList);
+        return getAllAds(new AdFilter(null, null, currentUserId, AdSort.ID), after, limit);
     }
 
     @Transactional
@@ -135,15 +345,55 @@ public class AdServiceImpl implements AdService {
         String newImageURL = uploadImage(image);
         int oldImageID = getImageIdFromUrl(currentAd.getImage());
         imageService.deleteImage(oldImageID);
-        currentAd.setImage(newImageURL);
+        currentAd.setImage(newImageURL)
+                .setUpdatedAt(System.currentTimeMillis());
         adRepository.save(currentAd);
+        recordChange(id, false);
+        eventPublisher.publishEvent(new AdChangedEvent(id, currentAd.getTitle(), currentAd.getTitle()));
         return currentAd.getImage();
     }
 
+    private Ad createAd(UserEntity author, CreateOrUpdateAd adBody, MultipartFile image) {
+        long now = System.currentTimeMillis();
+        AdEntity currentAd = adMapper.toAdEntity(adBody)
+                .setAuthor(author)
+                .setCreatedAt(now)
+                .setUpdatedAt(now);
+        String imageURL = uploadImage(image);
+        AdEntity savedAd = adRepository.save(currentAd.setImage(imageURL));
+        recordChange(savedAd.getId(), false);
+        eventPublisher.publishEvent(new AdChangedEvent(savedAd.getId(), null, savedAd.getTitle()));
+        return adMapper.toAd(savedAd);
+    }
+
+    /**
+     * Applies the checks of a single ad creation to one bulk entry.
+     *
+     * @return the reason the entry is invalid, or {@code null} if it is valid
+     */
+    private String validateBulkEntry(CreateOrUpdateAd adBody, MultipartFile image) {
+        if (adBody == null) {
+            return "No ad details provided";
+        }
+        Set<ConstraintViolation<CreateOrUpdateAd>> violations = validator.validate(adBody);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+        if (image == null || image.isEmpty()) {
+            return "No image provided";
+        }
+        if (!MediaType.IMAGE_PNG_VALUE.equals(image.getContentType())) {
+            return "Wrong mime type";
+        }
+        return null;
+    }
+
     private String uploadImage(MultipartFile image) {
-        try {
-            byte[] imageBytes = image.getBytes();
-            ImageEntity imageEntity = imageService.uploadImage(imageBytes);
+        try (InputStream imageData = image.getInputStream()) {
+            ImageEntity imageEntity = imageService.uploadImage(imageData);
             if (imageEntity == null) {
                 String message = "Image upload failed";
                 log.warn(message);
@@ -156,6 +406,34 @@ public class AdServiceImpl implements AdService {
         }
     }
 
+    private void recordChange(int adId, boolean deleted) {
+        adChangeRepository.save(adId, deleted);
+    }
+
+    private NotFoundException adNotFound(int id) {
+        String message = String.format("Ad with id=%d was not found", id);
+        log.warn(message);
+        return new NotFoundException(message);
+    }
+
+    private AdCursor decodeCursor(String cursor, AdSort sort) {
+        AdCursor decoded;
+        try {
+            decoded = AdCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            String message = String.format("Invalid cursor: %s", cursor);
+            log.warn(message);
+            throw new BadRequestException(message);
+        }
+        if (decoded.sort() != sort) {
+            String message = String.format("Cursor was issued for sort=%s, not sort=%s",
+                    decoded.sort().name().toLowerCase(Locale.ROOT), sort.name().toLowerCase(Locale.ROOT));
+            log.warn(message);
+            throw new BadRequestException(message);
+        }
+        return decoded;
+    }
+
     public String getImageUrl(ImageEntity imageEntity) {
         return ImageService.IMAGE_URL_PREFIX + imageEntity.getId();
     }
@@ -2,8 +2,10 @@ package ru.ads_online.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.ads_online.event.CommentChangedEvent;
 import ru.ads_online.exception.NotFoundException;
 import ru.ads_online.mapper.CommentMapper;
 import ru.ads_online.pojo.dto.comment.Comment;
@@ -11,6 +13,7 @@ import ru.ads_online.pojo.dto.comment.Comments;
 import ru.ads_online.pojo.dto.comment.CreateOrUpdateComment;
 import ru.ads_online.pojo.entity.CommentEntity;
 import ru.ads_online.pojo.entity.UserEntity;
+import ru.ads_online.pojo.projection.CommentsWatermark;
 import ru.ads_online.repository.AdRepository;
 import ru.ads_online.repository.CommentRepository;
 import ru.ads_online.service.CommentService;
@@ -24,6 +27,7 @@ public class CommentServiceImpl implements CommentService {
     private final CommentMapper commentMapper;
     private final CommentRepository commentRepository;
     private final AdRepository adRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     @Override
@@ -37,6 +41,18 @@ public class CommentServiceImpl implements CommentService {
         return commentMapper.toComments(comments);
     }
 
+    @Override
+    public String getCommentsVersion(int adId) {
+        CommentsWatermark watermark = commentRepository.findWatermarkByAdId(adId)
+                .orElseThrow(() -> {
+                    String message = String.format("Ad with id=%d was not found", adId);
+                    log.warn(message);
+                    return new NotFoundException(message);
+                });
+        return watermark.getCommentsVersion() + "-" + watermark.getVersionSum();
+    }
+
+    @Transactional
     @Override
     public Comment createComment(UserEntity user, int adId, CreateOrUpdateComment createOrUpdateComment) {
         CommentEntity result = commentMapper.toCommentEntity(
@@ -50,20 +66,28 @@ public class CommentServiceImpl implements CommentService {
                         })
         );
         CommentEntity createdComment = commentRepository.save(result);
+        adRepository.incrementCommentsVersion(adId);
+        eventPublisher.publishEvent(new CommentChangedEvent(createdComment.getId(), adId));
         return commentMapper.toComment(commentRepository.save(createdComment));
     }
 
+    @Transactional
     @Override
     public void deleteComment(int adId, int commentId) {
         checkInputParameters(adId, commentId);
         commentRepository.deleteById(commentId);
+        adRepository.incrementCommentsVersion(adId);
+        eventPublisher.publishEvent(new CommentChangedEvent(commentId, adId));
     }
 
+    @Transactional
     @Override
     public Comment updateComment(int adId, int commentId, CreateOrUpdateComment createOrUpdateComment) {
         CommentEntity commentEntity = checkInputParameters(adId, commentId);
         commentEntity.setText(createOrUpdateComment.getText());
         CommentEntity updatedCommentEntity = commentRepository.save(commentEntity);
+        adRepository.incrementCommentsVersion(adId);
+        eventPublisher.publishEvent(new CommentChangedEvent(commentId, adId));
         return commentMapper.toComment(updatedCommentEntity);
     }
 
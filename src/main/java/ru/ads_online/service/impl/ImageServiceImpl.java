@@ -2,81 +2,158 @@ package ru.ads_online.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.ads_online.cache.SingleFlight;
+import ru.ads_online.event.ImageChangedEvent;
 import ru.ads_online.exception.ImageUploadException;
 import ru.ads_online.exception.NotFoundException;
+import ru.ads_online.pojo.dto.image.ImageContent;
 import ru.ads_online.pojo.entity.ImageEntity;
+import ru.ads_online.repository.ImageBlobRepository;
+import ru.ads_online.repository.ImageLobRepository;
 import ru.ads_online.repository.ImageRepository;
 import ru.ads_online.service.ImageService;
+import ru.ads_online.storage.ImageStorage;
+import ru.ads_online.storage.SizeLimitedInputStream;
+import ru.ads_online.storage.SizedResource;
 
-import java.util.Arrays;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ImageServiceImpl implements ImageService {
     private final ImageRepository imageRepository;
+    private final ImageLobRepository imageLobRepository;
+    private final ImageBlobRepository imageBlobRepository;
+    private final ImageStorage imageStorage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SingleFlight<Integer, ImageContent> imageLoads;
+    private static final Tika tika = new Tika();
+    /**
+     * Number of leading bytes the type is detected from; the magic bytes of every allowed type fit in it.
+     */
+    private static final int DETECTION_LENGTH = 64;
+    private static final int SWEEP_BATCH_SIZE = 1000;
 
     @Value("${image.upload.max-size}")
     private int maxImageSize;
 
-    @Transactional(readOnly = true)
+    @Value("${image.upload.allowed-types}")
+    private Set<String> allowedTypes;
+
+    @Value("${image.storage.orphan-age}")
+    private Duration orphanAge;
+
     @Override
-    public ImageEntity getImage(int id) {
-        return imageRepository.findById(id)
-                .orElseThrow(() -> {
-                    String message = String.format("Image with id=%d was not found", id);
-                    log.warn(message);
-                    return new NotFoundException(message);
-                });
+    public ImageContent getImage(int id) {
+        // No surrounding transaction: requests waiting for a shared fetch must not hold a connection
+        return imageLoads.load(id, () -> {
+            ImageEntity imageEntity = findImage(id);
+            if (imageEntity.getStorageKey() == null) {
+                // Large objects cannot be read outside the transaction, so these are still copied to the heap
+                Optional<byte[]> legacyImage = imageLobRepository.readImage(id, InputStream::readAllBytes);
+                if (legacyImage.isPresent()) {
+                    return new ImageContent(new ByteArrayResource(legacyImage.get()), tika.detect(legacyImage.get()), null);
+                }
+                // Migrated to the image storage since it was looked up
+                imageEntity = findImage(id);
+            }
+            try {
+                Resource image = imageStorage.load(imageEntity.getStorageKey());
+                if (imageEntity.getSize() != null) {
+                    image = new SizedResource(image, imageEntity.getSize());
+                }
+                String contentType = imageEntity.getContentType() != null
+                        ? imageEntity.getContentType()
+                        : detectContentType(image);
+                return new ImageContent(image, contentType, imageEntity.getStorageKey());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
+    @Transactional
     @Override
-    public ImageEntity uploadImage(byte[] image) {
-
-        if (image == null || image.length == 0) {
-            String message = "No image provided or empty image data";
-            log.warn(message);
-            throw new ImageUploadException(message);
-        }
-
-        if (image.length > maxImageSize) {
-            String message = String.format("Image size exceeds the allowed limit: %d bytes", maxImageSize);
-            log.warn(message);
-            throw new ImageUploadException(message);
-        }
-
+    public ImageEntity uploadImage(InputStream image) {
+        StoredImage storedImage = store(image);
+        acquire(storedImage.storageKey());
         ImageEntity newImage = new ImageEntity();
-        newImage.setImage(image);
+        setContent(newImage, storedImage);
         return imageRepository.save(newImage);
     }
 
+    @Transactional
     @Override
-    public ImageEntity updateImage(int id, byte[] image) {
-        ImageEntity imageEntity = imageRepository.findById(id)
-                .orElseThrow(() -> {
-                    String message = String.format("Image with id=%d was not found", id);
-                    log.warn(message);
-                    return new NotFoundException(message);
-                });
+    public ImageEntity updateImage(int id, InputStream image) {
+        ImageEntity imageEntity = findImage(id);
 
-        if (Arrays.equals(imageEntity.getImage(), image)) {
+        StoredImage storedImage = store(image);
+        String previousStorageKey = imageEntity.getStorageKey();
+        // Keys are hashes of the content, so equal keys mean equal bytes
+        boolean unchangedContent = storedImage.storageKey().equals(previousStorageKey);
+        if (unchangedContent && imageEntity.getContentType() != null) {
             log.info("Image is unchanged, skipping save.");
             return imageEntity;
         }
 
-        imageEntity.setImage(image);
-        return imageRepository.save(imageEntity);
+        if (!unchangedContent && previousStorageKey != null) {
+            // Another update may be swapping the same two contents the other way round
+            imageBlobRepository.lock(List.of(storedImage.storageKey(), previousStorageKey));
+        }
+        if (!unchangedContent) {
+            acquire(storedImage.storageKey());
+        }
+        if (previousStorageKey == null) {
+            imageLobRepository.discard(id);
+        }
+        setContent(imageEntity, storedImage);
+        ImageEntity savedImage = imageRepository.save(imageEntity);
+        eventPublisher.publishEvent(new ImageChangedEvent(id));
+        if (previousStorageKey != null && !unchangedContent) {
+            release(previousStorageKey);
+        }
+        return savedImage;
     }
 
+    @Transactional
     @Override
     public void deleteImage(int id) {
 
         imageRepository.findById(id)
                 .ifPresentOrElse(
-                        imageRepository::delete,
+                        imageEntity -> {
+                            if (imageEntity.getStorageKey() == null) {
+                                imageLobRepository.discard(id);
+                            }
+                            imageRepository.delete(imageEntity);
+                            eventPublisher.publishEvent(new ImageChangedEvent(id));
+                            if (imageEntity.getStorageKey() != null) {
+                                release(imageEntity.getStorageKey());
+                            }
+                        },
                         () -> {
                             String message = String.format("Image with id=%d was not found", id);
                             log.warn(message);
@@ -84,5 +161,172 @@ public class ImageServiceImpl implements ImageService {
                         }
                 );
     }
-}
 
+    @Scheduled(fixedDelayString = "${image.storage.sweep-interval}", initialDelayString = "${image.storage.sweep-interval}")
+    @Override
+    public void sweepStorage() {
+        int deleted = 0;
+        List<String> unreferenced;
+        do {
+            unreferenced = imageBlobRepository.findUnreferenced(SWEEP_BATCH_SIZE);
+            for (String storageKey : unreferenced) {
+                if (imageBlobRepository.deleteUnreferenced(storageKey, () -> deleteFromStorage(storageKey))) {
+                    deleted++;
+                }
+            }
+        } while (unreferenced.size() == SWEEP_BATCH_SIZE);
+
+        // Only bytes older than an upload takes to reference them, so uploads in progress are left alone
+        try (Stream<String> storageKeys = imageStorage.findStoredBefore(Instant.now().minus(orphanAge))) {
+            Iterator<String> iterator = storageKeys.iterator();
+            while (iterator.hasNext()) {
+                List<String> batch = new ArrayList<>(SWEEP_BATCH_SIZE);
+                while (iterator.hasNext() && batch.size() < SWEEP_BATCH_SIZE) {
+                    batch.add(iterator.next());
+                }
+                Set<String> recorded = imageBlobRepository.findRecorded(batch);
+                for (String storageKey : batch) {
+                    if (!recorded.contains(storageKey)
+                            && imageBlobRepository.deleteUnreferenced(storageKey, () -> deleteFromStorage(storageKey))) {
+                        deleted++;
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not list stored images", e);
+        }
+        log.info("Deleted {} stored images no image refers to", deleted);
+    }
+
+    private ImageEntity findImage(int id) {
+        return imageRepository.findById(id)
+                .orElseThrow(() -> {
+                    String message = String.format("Image with id=%d was not found", id);
+                    log.warn(message);
+                    return new NotFoundException(message);
+                });
+    }
+
+    /**
+     * Points the entity at the stored bytes and records what the read path needs for the response headers,
+     * so the type is detected and the length read here once instead of on every request.
+     */
+    private static void setContent(ImageEntity imageEntity, StoredImage storedImage) {
+        imageEntity.setStorageKey(storedImage.storageKey())
+                .setContentType(storedImage.contentType())
+                .setSize(storedImage.size());
+    }
+
+    /**
+     * Detects the type from the first bytes of the image only, for images stored before the type was kept.
+     */
+    private static String detectContentType(Resource image) throws IOException {
+        try (InputStream imageData = image.getInputStream()) {
+            return tika.detect(imageData);
+        }
+    }
+
+    /**
+     * Streams the image into the storage, which hashes it on the way. Only the first bytes are buffered, to
+     * check its type from its magic bytes before anything is written, and the size limit is enforced as the
+     * bytes are read, so an oversized upload fails once it passes the limit. The bytes are stored before the
+     * transaction records them, so they are deleted again if it rolls back.
+     */
+    private StoredImage store(InputStream image) {
+        if (image == null) {
+            String message = "No image provided or empty image data";
+            log.warn(message);
+            throw new ImageUploadException(message);
+        }
+
+        SizeLimitedInputStream imageData = new SizeLimitedInputStream(image, maxImageSize);
+        try {
+            byte[] head = imageData.readNBytes(DETECTION_LENGTH);
+            if (head.length == 0) {
+                String message = "No image provided or empty image data";
+                log.warn(message);
+                throw new ImageUploadException(message);
+            }
+
+            String contentType = tika.detect(head);
+            if (!allowedTypes.contains(contentType)) {
+                String message = String.format("Unsupported image type: %s", contentType);
+                log.warn(message);
+                throw new ImageUploadException(message);
+            }
+
+            String storageKey = imageStorage.store(new SequenceInputStream(new ByteArrayInputStream(head), imageData));
+            deleteOnRollback(storageKey);
+            return new StoredImage(storageKey, contentType, imageData.getCount());
+        } catch (SizeLimitedInputStream.LimitExceededException e) {
+            String message = String.format("Image size exceeds the allowed limit: %d bytes", maxImageSize);
+            log.warn(message);
+            throw new ImageUploadException(message);
+        } catch (IOException e) {
+            log.error("Error occurred while storing image: {}", e.getMessage());
+            throw new ImageUploadException("Image upload failed due to IO exception", e);
+        }
+    }
+
+    /**
+     * Adds a reference to stored bytes for a new or updated image. The bytes may have been stored already
+     * for another image, and that image's removal may have deleted them between the store and this
+     * reference; the upload then fails rather than point at missing bytes.
+     */
+    private void acquire(String storageKey) {
+        imageBlobRepository.acquire(storageKey);
+        try {
+            imageStorage.load(storageKey);
+        } catch (IOException e) {
+            String message = "Image was deleted while being uploaded, please retry";
+            log.warn(message);
+            throw new ImageUploadException(message, e);
+        }
+    }
+
+    /**
+     * Drops a reference to stored bytes. Bytes no image refers to any more are deleted once the transaction
+     * dropping the last reference has committed, so a rollback never leaves an image without its bytes.
+     */
+    private void release(String storageKey) {
+        if (imageBlobRepository.release(storageKey) > 0) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                imageBlobRepository.deleteUnreferenced(storageKey, () -> deleteFromStorage(storageKey));
+            }
+        });
+    }
+
+    /**
+     * Deletes bytes stored in a transaction that rolls back, unless an image refers to them meanwhile, so they
+     * do not stay in the storage without a row recording them. Whatever escapes this, for instance when the
+     * application stops first, is left to {@link #sweepStorage}.
+     */
+    private void deleteOnRollback(String storageKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    imageBlobRepository.deleteUnreferenced(storageKey, () -> deleteFromStorage(storageKey));
+                }
+            }
+        });
+    }
+
+    private void deleteFromStorage(String storageKey) {
+        try {
+            imageStorage.delete(storageKey);
+        } catch (IOException e) {
+            log.warn("Could not delete stored image with key={}", storageKey, e);
+        }
+    }
+
+    private record StoredImage(String storageKey, String contentType, long size) {
+    }
+}
@@ -2,11 +2,16 @@ package ru.ads_online.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import ru.ads_online.event.UserChangedEvent;
 import ru.ads_online.exception.ForbiddenException;
+import ru.ads_online.exception.NotFoundException;
 import ru.ads_online.mapper.UserMapper;
+import ru.ads_online.pojo.dto.Versioned;
 import ru.ads_online.pojo.dto.user.NewPassword;
 import ru.ads_online.pojo.dto.user.UpdateUser;
 import ru.ads_online.pojo.dto.user.User;
@@ -18,6 +23,7 @@ import ru.ads_online.service.ImageService;
 import ru.ads_online.service.UserService;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 @Service
 @RequiredArgsConstructor
@@ -27,13 +33,14 @@ public class UserServiceImpl implements UserService {
     private final UserMapper userMapper;
     private final PasswordEncoder passwordEncoder;
     private final ImageService imageService;
+    private final ApplicationEventPublisher eventPublisher;
 
+    @Transactional
     @Override
     public void setPassword(UserPrincipal userDetails, NewPassword newPassword) {
-        UserEntity currentUser = userDetails.getUser();
+        UserEntity currentUser = findCurrentUser(userDetails);
         if (passwordEncoder.matches(newPassword.getCurrentPassword(), currentUser.getPassword())) {
             currentUser.setPassword(passwordEncoder.encode(newPassword.getNewPassword()));
-            userRepository.save(currentUser);
         } else {
             String message = "Wrong password";
             log.warn(message);
@@ -42,37 +49,54 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
-    public User getData(UserPrincipal userDetails) {
+    public Versioned<User> getData(UserPrincipal userDetails) {
         UserEntity currentUser = userDetails.getUser();
-        return userMapper.toUser(currentUser);
+        return new Versioned<>(userMapper.toUser(currentUser), currentUser.getId() + "-" + currentUser.getVersion());
     }
 
+    @Transactional
     @Override
     public UpdateUser updateData(UserPrincipal userDetails, UpdateUser updateUser) {
-        UserEntity currentUser = userDetails.getUser()
+        UserEntity currentUser = findCurrentUser(userDetails)
                 .setFirstName(updateUser.getFirstName())
                 .setLastName(updateUser.getLastName())
                 .setPhone(updateUser.getPhone());
-        userRepository.save(currentUser);
+        eventPublisher.publishEvent(new UserChangedEvent(currentUser.getId()));
         return updateUser;
     }
 
+    @Transactional
     @Override
     public void updateImage(UserPrincipal userDetails, MultipartFile image) throws IOException {
-        UserEntity currentUser = userDetails.getUser();
+        UserEntity currentUser = findCurrentUser(userDetails);
         ImageEntity imageEntity;
 
-            byte[] imageBytes = image.getBytes();
-
+        try (InputStream imageData = image.getInputStream()) {
             if (currentUser.getImage() == null) {
-                imageEntity = imageService.uploadImage(imageBytes);
+                imageEntity = imageService.uploadImage(imageData);
             } else {
                 int imageId = Integer.parseInt(currentUser.getImage().replaceAll(ImageService.IMAGE_URL_PREFIX, ""));
-                imageEntity = imageService.updateImage(imageId, imageBytes);
+                imageEntity = imageService.updateImage(imageId, imageData);
             }
+        }
+
+        String imageURL = ImageService.IMAGE_URL_PREFIX + imageEntity.getId();
+        currentUser.setImage(imageURL);
+    }
 
-            String imageURL = ImageService.IMAGE_URL_PREFIX + imageEntity.getId();
-            currentUser.setImage(imageURL);
-            userRepository.save(currentUser);
+    /**
+     * Loads the user behind the principal into the current transaction. The principal's copy was read when the
+     * request was authenticated, so saving it would fail on a version bumped by a concurrent request since.
+     * A change committed between this read and the end of the transaction still fails the version check and
+     * is answered with 409.
+     */
+    private UserEntity findCurrentUser(UserPrincipal userDetails) {
+        int id = userDetails.getUser().getId();
+        return userRepository.findById(id)
+                .orElseThrow(() -> {
+                    String message = String.format("User with id=%d was not found", id);
+                    log.warn(message);
+                    return new NotFoundException(message);
+                });
     }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package ru.ads_online.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+/**
+ * Keeps every image in its own file under a root directory, named by its key and sharded by the first two
+ * byte pairs of the key: {@code ab/cd/abcd...}. Bytes are written to a temporary file while being hashed and
+ * then moved into place atomically, so a file under its final name is always complete.
+ */
+@Component
+@ConditionalOnProperty(name = "image.storage.type", havingValue = "filesystem", matchIfMissing = true)
+@Slf4j
+public class FileSystemImageStorage implements ImageStorage {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int KEY_LENGTH = 64;
+    private final Path root;
+
+    public FileSystemImageStorage(@Value("${image.storage.root}") Path root) throws IOException {
+        this.root = Files.createDirectories(root).toAbsolutePath();
+        log.info("Storing images under {}", this.root);
+    }
+
+    @Override
+    public String store(InputStream data) throws IOException {
+        Path tempFile = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+                data.transferTo(out);
+            }
+            String key = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(key);
+            if (Files.exists(target)) {
+                // Keeps the copy from being taken for an unreferenced old one before the new image refers to it
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                return key;
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Stored concurrently with the same content
+            }
+            return key;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public Resource load(String key) throws IOException {
+        Path file = resolve(key);
+        if (!Files.isRegularFile(file)) {
+            throw new FileNotFoundException("No image stored under key " + key);
+        }
+        return new FileSystemResource(file);
+    }
+
+    @Override
+    public Stream<String> findStoredBefore(Instant before) throws IOException {
+        return Files.find(root, 3, (file, attributes) -> attributes.isRegularFile()
+                        && attributes.lastModifiedTime().toInstant().isBefore(before)
+                        && isKey(file.getFileName().toString()))
+                .map(file -> file.getFileName().toString());
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key) {
+        if (!isKey(key)) {
+            throw new IllegalArgumentException("Malformed image key " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static boolean isKey(String name) {
+        return name.length() == KEY_LENGTH && name.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ru.ads_online.storage;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.ads_online.repository.ImageBlobRepository;
+import ru.ads_online.repository.ImageLobRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Moves images still kept as Postgres large objects into the {@link ImageStorage} while the application serves
+ * requests. Every node runs it, and each image is claimed by one of them before its large object is streamed
+ * into the storage, so no bytes are copied twice. The claim does not lock the row, which is locked only to
+ * point it at the stored copy, record its type and length and unlink the large object, so requests reading
+ * the image wait for one short update at most. Images changed meanwhile are left alone. Images are served
+ * from whichever place holds them throughout.
+ */
+@Component
+@ConditionalOnProperty(name = "image.storage.migration.enabled", havingValue = "true")
+@Slf4j
+public class ImageLobMigration {
+    private final ImageLobRepository imageLobRepository;
+    private final ImageBlobRepository imageBlobRepository;
+    private final ImageStorage imageStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private static final Tika tika = new Tika();
+    private Thread migrationThread;
+
+    public ImageLobMigration(ImageLobRepository imageLobRepository,
+                             ImageBlobRepository imageBlobRepository,
+                             ImageStorage imageStorage,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${image.storage.migration.batch-size}") int batchSize) {
+        this.imageLobRepository = imageLobRepository;
+        this.imageBlobRepository = imageBlobRepository;
+        this.imageStorage = imageStorage;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        migrationThread = new Thread(this::migrateAll, "image-lob-migration");
+        migrationThread.setDaemon(true);
+        migrationThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (migrationThread != null) {
+            migrationThread.interrupt();
+        }
+    }
+
+    /**
+     * Migrates images in ID order, looking up a batch of them at a time, until none is left.
+     *
+     * @return number of images migrated
+     */
+    public int migrateAll() {
+        int migrated = 0;
+        try {
+            int lastId = 0;
+            List<ImageLobRepository.LegacyImage> images;
+            do {
+                images = imageLobRepository.findUnmigrated(lastId, batchSize);
+                for (ImageLobRepository.LegacyImage image : images) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return migrated;
+                    }
+                    if (migrate(image)) {
+                        migrated++;
+                    }
+                    lastId = image.id();
+                }
+                if (!images.isEmpty()) {
+                    log.info("Moved {} images from large objects to the image storage so far", migrated);
+                }
+            } while (!images.isEmpty());
+        } catch (RuntimeException e) {
+            log.error("Stopped moving images to the image storage after {} images, will resume on next start", migrated, e);
+        }
+        return migrated;
+    }
+
+    /**
+     * Migrates one image in a transaction of its own, which first claims it, so no other node streams the same
+     * large object. The claim is not a row lock, so requests reading the image do not wait while it is copied.
+     * The type and length are read back from the stored copy, so the large object is streamed only once. The
+     * row is locked only to take the reference and mark the image migrated; a copy deleted meanwhile as
+     * unreferenced fails the image instead of being pointed at.
+     *
+     * @return whether the image was migrated, {@code false} if it was claimed by another node or changed meanwhile
+     */
+    boolean migrate(ImageLobRepository.LegacyImage image) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (!imageLobRepository.claimUnmigrated(image)) {
+                return false;
+            }
+
+            String storageKey;
+            String contentType;
+            long size;
+            try {
+                storageKey = imageLobRepository.read(image.oid(), imageStorage::store);
+                Resource stored = imageStorage.load(storageKey);
+                try (InputStream data = stored.getInputStream()) {
+                    contentType = tika.detect(data);
+                }
+                size = stored.contentLength();
+            } catch (DataAccessException e) {
+                log.warn("Could not read the large object of image with id={}, it may have been changed meanwhile",
+                        image.id(), e);
+                status.setRollbackOnly();
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (!imageLobRepository.lockUnmigrated(image)) {
+                return false;
+            }
+            imageBlobRepository.acquire(storageKey);
+            try {
+                imageStorage.load(storageKey);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            imageLobRepository.markMigrated(image.id(), storageKey, contentType, size);
+            return true;
+        }));
+    }
+}
@@ -0,0 +1,48 @@
+package ru.ads_online.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of image bytes. An image is identified by the hex SHA-256 of its bytes, so storing
+ * the same bytes twice keeps a single copy and a key never points at different content.
+ */
+public interface ImageStorage {
+
+    /**
+     * Stores the bytes read from the stream, which is read to its end but not closed.
+     *
+     * @param data the image bytes
+     * @return key of the stored image
+     */
+    String store(InputStream data) throws IOException;
+
+    /**
+     * Returns a stored image as a resource that knows its length and is read only when written out.
+     *
+     * @param key key returned by {@link #store}
+     * @return the image
+     * @throws java.io.FileNotFoundException if no image is stored under the key
+     */
+    Resource load(String key) throws IOException;
+
+    /**
+     * Returns the keys of images stored, or stored again, before the given time. Images stored since may
+     * still be on their way to being referenced, so they are left out.
+     *
+     * @param before time the images were last stored before
+     * @return stream of keys, to be closed after use
+     */
+    Stream<String> findStoredBefore(Instant before) throws IOException;
+
+    /**
+     * Removes a stored image. Removing a missing image does nothing.
+     *
+     * @param key key returned by {@link #store}
+     */
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,58 @@
+package ru.ads_online.storage;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A resource whose length is known without asking the resource it wraps, so the {@code Content-Length} and
+ * range headers of a response are built without the stat {@link #contentLength()} would otherwise make. Finding
+ * the file when it is loaded still takes a stat, as do {@link #exists()} and {@link #isReadable()}, which are
+ * left to the wrapped resource.
+ */
+public class SizedResource extends AbstractResource {
+    private final Resource resource;
+    private final long size;
+
+    public SizedResource(Resource resource, long size) {
+        this.resource = resource;
+        this.size = size;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return resource.getInputStream();
+    }
+
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    @Override
+    public boolean exists() {
+        return resource.exists();
+    }
+
+    @Override
+    public boolean isReadable() {
+        return resource.isReadable();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return resource.lastModified();
+    }
+
+    @Override
+    public String getFilename() {
+        return resource.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return resource.getDescription();
+    }
+}
@@ -0,0 +1,132 @@
+package ru.ads_online.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.util.FileSystemUtils;
+import ru.ads_online.controller.utils.TestUtils;
+import ru.ads_online.storage.FileSystemImageStorage;
+import ru.ads_online.storage.SizedResource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the work done for the headers of an image response when its type is detected on every request with
+ * the same headers built from the type and length stored at upload:
+ * <ul>
+ *     <li>detecting over the whole image loaded into memory, as when images were large objects;</li>
+ *     <li>detecting over the first bytes of the stored file, with the length taken from the file;</li>
+ *     <li>reading the stored type and length, with the file only looked up.</li>
+ * </ul>
+ * The benchmarks run in JMH, which forks a JVM, warms it up and keeps the results in use. Only reports timings,
+ * so it runs only when asked: {@code mvn test -Dbenchmark=true -Dtest=ImageHeadersBenchmarkTest}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Slf4j
+public class ImageHeadersBenchmarkTest {
+    private static final int IMAGES = 100;
+    private static final Tika tika = new Tika();
+    private Path root;
+    private FileSystemImageStorage imageStorage;
+    private List<StoredImage> images;
+    private int next;
+
+    @Test
+    @DisplayName("Build image headers with and without detecting the type")
+    void buildHeaders() throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(ImageHeadersBenchmarkTest.class.getName() + "\\.")
+                .build())
+                .run();
+        results.forEach(result -> log.info("{}: {} {}", result.getParams().getBenchmark(),
+                String.format("%.1f", result.getPrimaryResult().getScore()), result.getPrimaryResult().getScoreUnit()));
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("image-headers-");
+        imageStorage = new FileSystemImageStorage(root);
+        images = new ArrayList<>();
+        for (int i = 0; i < IMAGES; i++) {
+            byte[] image = pngImage(i);
+            String storageKey = imageStorage.store(new ByteArrayInputStream(image));
+            images.add(new StoredImage(storageKey, image, tika.detect(image), image.length));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public long detectedInMemory() {
+        byte[] bytes = nextImage().bytes();
+        return MediaType.parseMediaType(tika.detect(bytes)).hashCode() + bytes.length;
+    }
+
+    @Benchmark
+    public long detectedFromFile() throws IOException {
+        Resource resource = imageStorage.load(nextImage().storageKey());
+        try (InputStream data = resource.getInputStream()) {
+            return MediaType.parseMediaType(tika.detect(data)).hashCode() + resource.contentLength();
+        }
+    }
+
+    @Benchmark
+    public long stored() throws IOException {
+        StoredImage image = nextImage();
+        Resource resource = new SizedResource(imageStorage.load(image.storageKey()), image.size());
+        return MediaType.parseMediaType(image.contentType()).hashCode() + resource.contentLength();
+    }
+
+    private StoredImage nextImage() {
+        next = (next + 1) % images.size();
+        return images.get(next);
+    }
+
+    /**
+     * A PNG of about the size of an uploaded image, with noise so it does not compress away.
+     */
+    private static byte[] pngImage(int seed) throws IOException {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        byte[] noise = TestUtils.generateRandomImageBytes();
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, noise[(x * image.getHeight() + y + seed) % noise.length] * 65599);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    private record StoredImage(String storageKey, byte[] bytes, String contentType, long size) {
+    }
+}
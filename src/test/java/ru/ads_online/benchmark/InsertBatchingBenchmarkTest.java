@@ -0,0 +1,220 @@
+package ru.ads_online.benchmark;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.ads_online.AdsOnlineApplication;
+import ru.ads_online.controller.utils.TestUtils;
+import ru.ads_online.pojo.entity.AdEntity;
+import ru.ads_online.pojo.entity.CommentEntity;
+import ru.ads_online.pojo.entity.ImageEntity;
+import ru.ads_online.pojo.entity.UserEntity;
+import ru.ads_online.repository.AdRepository;
+import ru.ads_online.repository.CommentRepository;
+import ru.ads_online.repository.ImageRepository;
+import ru.ads_online.repository.UserRepository;
+import ru.ads_online.service.ImageService;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Compares insert throughput of comments and images keyed by IDENTITY columns, as they were, with the same rows
+ * keyed by pooled sequences, as they are now, written one statement per row and in JDBC batches.
+ * <p>
+ * The IDENTITY baseline is a copy of each table whose key is an IDENTITY column again, with the same
+ * constraints and indexes. Its rows are written the way Hibernate writes IDENTITY-keyed entities: one insert
+ * per row, reading the generated key back before the next row. It is written over plain JDBC, so it is spared
+ * Hibernate's own overhead and the comparison favours the baseline.
+ * <p>
+ * Takes a while and only reports timings, so it runs only when asked: {@code mvn test -Dbenchmark=true
+ * -Dtest=InsertBatchingBenchmarkTest}.
+ */
+@SpringBootTest(classes = AdsOnlineApplication.class)
+@Testcontainers
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Slf4j
+public class InsertBatchingBenchmarkTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:alpine");
+    private static final int ROWS = 5000;
+    private static final int WARM_UP_ROWS = 500;
+    private static final int UNBATCHED = 1;
+    private static final int BATCHED = 50;
+    private static List<UserEntity> users;
+    private static List<AdEntity> ads;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @BeforeAll
+    static void beforeAll(@Autowired PasswordEncoder passwordEncoder,
+                          @Autowired UserRepository userRepository,
+                          @Autowired ImageService imageService,
+                          @Autowired AdRepository adRepository) {
+        users = TestUtils.createUniqueUsers(2, passwordEncoder);
+        userRepository.saveAll(users);
+
+        ads = TestUtils.createAds(2, users, imageService);
+        adRepository.saveAll(ads);
+    }
+
+    @BeforeEach
+    void createIdentityTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS comment_identity (LIKE comment INCLUDING ALL)");
+        jdbcTemplate.execute("ALTER TABLE comment_identity ALTER COLUMN id ADD GENERATED BY DEFAULT AS IDENTITY IF NOT EXISTS");
+        jdbcTemplate.execute("ALTER TABLE comment_identity DROP CONSTRAINT IF EXISTS fk_comment_identity_ad, " +
+                "DROP CONSTRAINT IF EXISTS fk_comment_identity_user, " +
+                "ADD CONSTRAINT fk_comment_identity_ad FOREIGN KEY (ad_id) REFERENCES ad (id), " +
+                "ADD CONSTRAINT fk_comment_identity_user FOREIGN KEY (user_id) REFERENCES \"user\" (id)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS image_identity (LIKE image INCLUDING ALL)");
+        jdbcTemplate.execute("ALTER TABLE image_identity ALTER COLUMN id ADD GENERATED BY DEFAULT AS IDENTITY IF NOT EXISTS");
+    }
+
+    @AfterAll
+    static void afterAll(@Autowired JdbcTemplate jdbcTemplate,
+                         @Autowired ImageRepository imageRepository,
+                         @Autowired UserRepository userRepository,
+                         @Autowired AdRepository adRepository,
+                         @Autowired CommentRepository commentRepository) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS comment_identity, image_identity");
+        commentRepository.deleteAll();
+        adRepository.deleteAll();
+        imageRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Insert comments with IDENTITY keys, one by one and in batches")
+    void insertComments() {
+        IdentityTable<CommentEntity> identityTable = new IdentityTable<>("comment_identity",
+                List.of("created_at", "text", "version", "ad_id", "user_id"),
+                comment -> new Object[]{comment.getCreatedAt(), comment.getText(), comment.getVersion(),
+                        comment.getAdEntity().getId(), comment.getAuthor().getId()});
+        compare("comments", identityTable, () -> TestUtils.createComments(ROWS, users, ads),
+                () -> TestUtils.createComments(WARM_UP_ROWS, users, ads));
+    }
+
+    @Test
+    @DisplayName("Insert images with IDENTITY keys, one by one and in batches")
+    void insertImages() {
+        IdentityTable<ImageEntity> identityTable = new IdentityTable<>("image_identity",
+                List.of("storage_key", "content_type", "size"),
+                image -> new Object[]{image.getStorageKey(), image.getContentType(), image.getSize()});
+        compare("images", identityTable, () -> createImages(ROWS), () -> createImages(WARM_UP_ROWS));
+    }
+
+    private <T> void compare(String rowName, IdentityTable<T> identityTable,
+                             Supplier<List<T>> rows, Supplier<List<T>> warmUpRows) {
+        insertWithIdentityKeys(identityTable, warmUpRows.get());
+        insert(warmUpRows.get(), UNBATCHED);
+        insert(warmUpRows.get(), BATCHED);
+
+        long identityNanos = insertWithIdentityKeys(identityTable, rows.get());
+        long unbatchedNanos = insert(rows.get(), UNBATCHED);
+        long batchedNanos = insert(rows.get(), BATCHED);
+
+        log.info("Inserted {} {}: {} rows/s with IDENTITY keys, {} rows/s with pooled sequence keys one by one, " +
+                        "{} rows/s with pooled sequence keys in batches of {}, {}x faster than IDENTITY",
+                ROWS, rowName, rowsPerSecond(identityNanos), rowsPerSecond(unbatchedNanos), rowsPerSecond(batchedNanos),
+                BATCHED, String.format("%.1f", (double) identityNanos / batchedNanos));
+    }
+
+    /**
+     * Inserts the rows into the IDENTITY-keyed copy of their table in one transaction that is rolled back
+     * afterwards, one statement per row, each returning its generated key.
+     *
+     * @return time spent inserting, in nanoseconds
+     */
+    private <T> long insertWithIdentityKeys(IdentityTable<T> identityTable, List<T> entities) {
+        String sql = "INSERT INTO " + identityTable.name() + " (" + String.join(", ", identityTable.columns()) + ") " +
+                "VALUES (" + String.join(", ", Collections.nCopies(identityTable.columns().size(), "?")) + ")";
+        Long nanos = transactionTemplate.execute(status -> {
+            long elapsed = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                long start = System.nanoTime();
+                try (PreparedStatement insert = connection.prepareStatement(sql, new String[]{"id"})) {
+                    for (T entity : entities) {
+                        Object[] values = identityTable.values().apply(entity);
+                        for (int i = 0; i < values.length; i++) {
+                            insert.setObject(i + 1, values[i]);
+                        }
+                        insert.executeUpdate();
+                        try (ResultSet keys = insert.getGeneratedKeys()) {
+                            keys.next();
+                        }
+                    }
+                }
+                return System.nanoTime() - start;
+            });
+            status.setRollbackOnly();
+            return elapsed;
+        });
+        return nanos;
+    }
+
+    /**
+     * Persists the entities in one transaction that is rolled back after the flush, so every run starts
+     * from the same tables.
+     *
+     * @return time spent persisting and flushing, in nanoseconds
+     */
+    private long insert(List<?> entities, int batchSize) {
+        Long nanos = transactionTemplate.execute(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            long start = System.nanoTime();
+            entities.forEach(entityManager::persist);
+            entityManager.flush();
+            long elapsed = System.nanoTime() - start;
+            status.setRollbackOnly();
+            return elapsed;
+        });
+        return nanos;
+    }
+
+    private static long rowsPerSecond(long nanos) {
+        return ROWS * 1_000_000_000L / nanos;
+    }
+
+    private static List<ImageEntity> createImages(int numberOfImages) {
+        return IntStream.range(0, numberOfImages)
+                .mapToObj(i -> new ImageEntity().setStorageKey(String.format("%064x", i)))
+                .toList();
+    }
+
+    /**
+     * @param name    table keyed by an IDENTITY column
+     * @param columns columns written, all but the key
+     * @param values  values of the columns for an entity
+     */
+    private record IdentityTable<T>(String name, List<String> columns, Function<T, Object[]> values) {
+    }
+}
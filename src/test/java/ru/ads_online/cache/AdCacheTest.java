@@ -0,0 +1,138 @@
+package ru.ads_online.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.ads_online.exception.NotFoundException;
+import ru.ads_online.pojo.dto.Versioned;
+import ru.ads_online.pojo.dto.ad.ExtendedAd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdCacheTest {
+    private static final int CONCURRENT_CALLERS = 8;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdCache adCache = new AdCache(100, meterRegistry);
+
+    @Test
+    @DisplayName("Concurrent misses of one ad share a single load, counted as hits")
+    void getExtendedAd_shouldRunLoaderOnce_whenCalledConcurrently() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+        try {
+            List<Future<Versioned<ExtendedAd>>> results = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+                results.add(executor.submit(() -> adCache.getExtendedAd(1, id -> {
+                    loads.incrementAndGet();
+                    awaitQuietly(release);
+                    return versionedAd(id);
+                })));
+            }
+            while (gets("hit") < CONCURRENT_CALLERS - 1) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            for (Future<Versioned<ExtendedAd>> result : results) {
+                assertEquals(1, result.get(5, TimeUnit.SECONDS).body().getPk());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get(), "Only the first caller should load");
+        assertEquals(1, gets("miss"));
+        assertEquals(CONCURRENT_CALLERS - 1, gets("hit"), "Every other caller should join the load in flight");
+    }
+
+    @Test
+    @DisplayName("A failed load is rethrown and not cached")
+    void getExtendedAd_shouldRethrowLoaderException_whenLoaderFails() {
+        assertThrows(NotFoundException.class, () -> adCache.getExtendedAd(1, id -> {
+            throw new NotFoundException("missing");
+        }));
+        assertEquals(1, adCache.getExtendedAd(1, AdCacheTest::versionedAd).body().getPk(),
+                "A failed load should not be remembered");
+    }
+
+    @Test
+    @DisplayName("Callers waiting for a failed load get its exception")
+    void getExtendedAd_shouldRethrowLoaderExceptionToWaitingCallers_whenLoaderFails() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Versioned<ExtendedAd>>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(executor.submit(() -> adCache.getExtendedAd(1, id -> {
+                    awaitQuietly(release);
+                    throw new NotFoundException("missing");
+                })));
+            }
+            while (gets("hit") < 1) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            for (Future<Versioned<ExtendedAd>> result : results) {
+                ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertInstanceOf(NotFoundException.class, failure.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("An ad evicted while it loads is loaded again")
+    void getExtendedAd_shouldLoadAgain_whenEvictedDuringLoad() {
+        AtomicInteger loads = new AtomicInteger();
+
+        adCache.getExtendedAd(1, id -> {
+            loads.incrementAndGet();
+            adCache.evict(id);
+            return versionedAd(id);
+        });
+        adCache.getExtendedAd(1, id -> {
+            loads.incrementAndGet();
+            return versionedAd(id);
+        });
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("Only loaded ads are returned as present")
+    void getPresentExtendedAds_shouldReturnOnlyCachedAds() {
+        adCache.getExtendedAd(1, AdCacheTest::versionedAd);
+
+        assertEquals(List.of(1), List.copyOf(adCache.getPresentExtendedAds(List.of(1, 2)).keySet()));
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("result", result).functionCounter().count();
+    }
+
+    private static Versioned<ExtendedAd> versionedAd(int id) {
+        return new Versioned<>(new ExtendedAd().setPk(id), id + "-0");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
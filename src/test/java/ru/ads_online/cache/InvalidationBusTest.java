@@ -0,0 +1,113 @@
+package ru.ads_online.cache;
+
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.ads_online.AdsOnlineApplication;
+import ru.ads_online.controller.utils.TestUtils;
+import ru.ads_online.pojo.dto.ad.CreateOrUpdateAd;
+import ru.ads_online.pojo.dto.user.UpdateUser;
+import ru.ads_online.pojo.entity.AdEntity;
+import ru.ads_online.pojo.entity.UserEntity;
+import ru.ads_online.repository.AdRepository;
+import ru.ads_online.repository.CommentRepository;
+import ru.ads_online.repository.ImageRepository;
+import ru.ads_online.repository.UserRepository;
+import ru.ads_online.security.UserPrincipal;
+import ru.ads_online.service.AdService;
+import ru.ads_online.service.ImageService;
+import ru.ads_online.service.UserService;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(classes = AdsOnlineApplication.class)
+@Testcontainers
+public class InvalidationBusTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:alpine");
+    private static final Duration CONVERGENCE_TIMEOUT = Duration.ofSeconds(10);
+    private static ConfigurableApplicationContext otherNode;
+    private static List<UserEntity> users;
+    private static List<AdEntity> ads;
+    @Autowired
+    private AdService adService;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @BeforeAll
+    static void beforeAll(@Autowired PasswordEncoder passwordEncoder,
+                          @Autowired UserRepository userRepository,
+                          @Autowired ImageService imageService,
+                          @Autowired AdRepository adRepository) {
+        users = TestUtils.createUniqueUsers(2, passwordEncoder);
+        userRepository.saveAll(users);
+
+        ads = TestUtils.createAds(2, users, imageService);
+        adRepository.saveAll(ads);
+
+        otherNode = new SpringApplicationBuilder(AdsOnlineApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                        "--spring.datasource.username=" + postgres.getUsername(),
+                        "--spring.datasource.password=" + postgres.getPassword());
+    }
+
+    @AfterAll
+    static void afterAll(@Autowired ImageRepository imageRepository,
+                         @Autowired UserRepository userRepository,
+                         @Autowired AdRepository adRepository,
+                         @Autowired CommentRepository commentRepository) {
+        otherNode.close();
+        commentRepository.deleteAll();
+        adRepository.deleteAll();
+        imageRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Cached ad is refreshed after it was updated on another node")
+    void getAd_shouldReturnUpdatedAd_whenAdUpdatedOnOtherNode() {
+        AdEntity ad = ads.getFirst();
+        assertEquals(ad.getTitle(), adService.getAd(ad.getId()).body().getTitle());
+
+        CreateOrUpdateAd update = TestUtils.getUpdateForAd();
+        otherNode.getBean(AdService.class).updateAd(ad.getId(), update);
+
+        await().atMost(CONVERGENCE_TIMEOUT)
+                .untilAsserted(() -> assertEquals(update.getTitle(), adService.getAd(ad.getId()).body().getTitle()));
+    }
+
+    @Test
+    @DisplayName("Cached ad is refreshed after its author was updated on another node")
+    void getAd_shouldReturnUpdatedAuthor_whenAuthorUpdatedOnOtherNode() {
+        AdEntity ad = ads.getLast();
+        UserEntity author = ad.getAuthor();
+        assertEquals(author.getFirstName(), adService.getAd(ad.getId()).body().getAuthorFirstName());
+
+        UpdateUser update = new UpdateUser()
+                .setFirstName(author.getFirstName() + "-updated")
+                .setLastName(author.getLastName())
+                .setPhone(author.getPhone());
+        otherNode.getBean(UserService.class).updateData(new UserPrincipal(author), update);
+
+        await().atMost(CONVERGENCE_TIMEOUT)
+                .untilAsserted(() -> assertEquals(update.getFirstName(), adService.getAd(ad.getId()).body().getAuthorFirstName()));
+    }
+}
@@ -0,0 +1,122 @@
+package ru.ads_online.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.ads_online.pojo.dto.ad.AdFilter;
+import ru.ads_online.pojo.dto.ad.Ads;
+import ru.ads_online.pojo.dto.comment.Comments;
+import ru.ads_online.service.AdService;
+import ru.ads_online.service.CommentService;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class ListingCacheTest {
+    private static final Duration REFRESH_AFTER = Duration.ofMillis(100);
+    private static final Duration MAX_STALENESS = Duration.ofMinutes(1);
+    private static final AdFilter FILTER = AdFilter.unfiltered();
+
+    private final AdService adService = mock(AdService.class);
+    private final CommentService commentService = mock(CommentService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ListingCache listingCache;
+
+    @BeforeEach
+    void setUp() {
+        listingCache = new ListingCache(true, REFRESH_AFTER, MAX_STALENESS, 100, 1, 1,
+                adService, commentService, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        listingCache.shutdown();
+    }
+
+    @Test
+    @DisplayName("Stale listing is served at once while one refresh runs in the background")
+    void getAds_shouldServeStaleAndRefreshOnce_whenRefreshIntervalElapsed() throws Exception {
+        Ads first = new Ads().setCount(1);
+        Ads second = new Ads().setCount(2);
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch releaseRefresh = new CountDownLatch(1);
+        when(adService.getAdsVersion()).thenReturn("1", "2");
+        when(adService.getAllAds(any(), any(), anyInt()))
+                .thenReturn(first)
+                .thenAnswer(invocation -> {
+                    refreshStarted.countDown();
+                    releaseRefresh.await();
+                    return second;
+                });
+
+        assertEquals(first, listingCache.getAds(FILTER, null, 10).body());
+        Thread.sleep(REFRESH_AFTER.multipliedBy(2).toMillis());
+
+        List<Ads> servedDuringRefresh = IntStream.range(0, 20)
+                .mapToObj(i -> listingCache.getAds(FILTER, null, 10).body())
+                .toList();
+        refreshStarted.await();
+        verify(adService, times(2)).getAllAds(any(), any(), anyInt());
+        releaseRefresh.countDown();
+
+        servedDuringRefresh.forEach(ads -> assertEquals(first, ads, "Stale listing should be served during refresh"));
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertEquals("2", listingCache.getAds(FILTER, null, 10).version()));
+    }
+
+    @Test
+    @DisplayName("Refreshes rejected by the saturated executor are counted and retried later, stale entries served")
+    void getComments_shouldServeStaleAndRetryRefresh_whenExecutorIsSaturated() throws Exception {
+        AtomicBoolean blockRefreshes = new AtomicBoolean();
+        CountDownLatch releaseRefreshes = new CountDownLatch(1);
+        AtomicInteger version = new AtomicInteger();
+        when(commentService.getCommentsVersion(anyInt())).thenAnswer(invocation -> String.valueOf(version.incrementAndGet()));
+        when(commentService.getAllComments(anyInt())).thenAnswer(invocation -> {
+            if (blockRefreshes.get()) {
+                releaseRefreshes.await();
+            }
+            return new Comments();
+        });
+        List<String> loadedVersions = IntStream.rangeClosed(1, 3)
+                .mapToObj(adId -> listingCache.getComments(adId).version())
+                .toList();
+        blockRefreshes.set(true);
+        Thread.sleep(REFRESH_AFTER.multipliedBy(2).toMillis());
+
+        // One refresh runs, one waits in the queue and the third is rejected
+        List<String> servedVersions = IntStream.rangeClosed(1, 3)
+                .mapToObj(adId -> listingCache.getComments(adId).version())
+                .toList();
+
+        assertEquals(loadedVersions, servedVersions, "Stale comments should be served");
+        assertEquals(1, meterRegistry.get("cache.listing.refresh.rejected").counter().count());
+        releaseRefreshes.countDown();
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertNotEquals(loadedVersions.getLast(), listingCache.getComments(3).version(),
+                        "Rejected refresh should be retried on a later request"));
+    }
+
+    @Test
+    @DisplayName("Nothing is built while the cache is disabled")
+    void isEnabled_shouldBuildNoExecutor_whenDisabled() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ListingCache disabled = new ListingCache(false, REFRESH_AFTER, MAX_STALENESS, 100, 1, 1,
+                adService, commentService, registry);
+
+        assertFalse(disabled.isEnabled());
+        assertTrue(registry.getMeters().isEmpty(), "No cache or executor metrics should be registered");
+        disabled.shutdown();
+    }
+}
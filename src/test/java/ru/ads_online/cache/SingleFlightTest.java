@@ -0,0 +1,88 @@
+package ru.ads_online.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.ads_online.exception.NotFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+    private static final int CONCURRENT_CALLERS = 8;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight<Integer, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+
+    @Test
+    @DisplayName("Concurrent loads of one key share a single fetch")
+    void load_shouldRunLoaderOnce_whenCalledConcurrently() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.load(1, () -> {
+                    fetches.incrementAndGet();
+                    awaitQuietly(release);
+                    return "value";
+                })));
+            }
+            while (collapsed() < CONCURRENT_CALLERS - 1) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, fetches.get(), "Only the first caller should fetch");
+        assertEquals(CONCURRENT_CALLERS - 1, collapsed(), "Every other caller should be counted as collapsed");
+    }
+
+    @Test
+    @DisplayName("A completed load is not reused by later calls")
+    void load_shouldRunLoaderAgain_whenPreviousLoadCompleted() {
+        AtomicInteger fetches = new AtomicInteger();
+
+        singleFlight.load(1, () -> "first" + fetches.incrementAndGet());
+        String second = singleFlight.load(1, () -> "second" + fetches.incrementAndGet());
+
+        assertEquals("second2", second);
+        assertEquals(0, collapsed());
+    }
+
+    @Test
+    @DisplayName("A failed load is rethrown to the caller")
+    void load_shouldRethrowLoaderException_whenLoaderFails() {
+        assertThrows(NotFoundException.class, () -> singleFlight.load(1, () -> {
+            throw new NotFoundException("missing");
+        }));
+        assertEquals("value", singleFlight.load(1, () -> "value"), "A failed load should not be remembered");
+    }
+
+    private double collapsed() {
+        return meterRegistry.get("singleflight.collapsed").counter().count();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.ads_online.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.ads_online.AdsOnlineApplication;
+import ru.ads_online.controller.utils.TestUtils;
+import ru.ads_online.pojo.dto.ad.CreateOrUpdateAd;
+import ru.ads_online.pojo.entity.UserEntity;
+import ru.ads_online.repository.AdRepository;
+import ru.ads_online.repository.ImageRepository;
+import ru.ads_online.repository.UserRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Bulk ad creation without a surrounding test transaction, so each batch really commits on its own and
+ * a failed batch really rolls back before its entries are retried.
+ */
+@SpringBootTest(classes = AdsOnlineApplication.class, properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Testcontainers
+@AutoConfigureMockMvc
+public class AdBulkControllerTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:alpine");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private final static String URL_ADD_ADS = "/ads/bulk";
+    private static UserEntity author;
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+    private int batchSize;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @BeforeAll
+    static void beforeAll(@Autowired PasswordEncoder passwordEncoder,
+                          @Autowired UserRepository userRepository) {
+        author = TestUtils.createUniqueUsers(1, passwordEncoder).getFirst();
+        userRepository.save(author);
+    }
+
+    @AfterAll
+    static void afterAll(@Autowired AdRepository adRepository,
+                         @Autowired ImageRepository imageRepository,
+                         @Autowired UserRepository userRepository) {
+        adRepository.deleteAll();
+        imageRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Add many ads at once in JDBC batches")
+    void addAds_shouldInsertInBatches_whenAllEntriesAreValid() throws Exception {
+        int numberOfAds = 2 * batchSize;
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        String result = addAds(numberOfAds, -1);
+
+        List<Integer> ids = JsonPath.read(result, "$.results[*].ad.pk");
+        assertEquals(numberOfAds, ids.size());
+        assertEquals(2L * numberOfAds, statistics.getEntityInsertCount(), "Every ad and image should be inserted");
+        assertTrue(statistics.getPrepareStatementCount() < numberOfAds,
+                "Inserts should be sent in batches, not one statement per row, but " +
+                        statistics.getPrepareStatementCount() + " statements were prepared");
+        assertEquals(numberOfAds, countChanges(ids), "Every created ad should be recorded as a change");
+        assertEquals(2, countTransactions(ids), "Each batch should be created in one transaction");
+    }
+
+    @Test
+    @DisplayName("Add many ads at once when one of them fails while it is created")
+    void addAds_shouldRetryFailedBatchOneByOne_whenEntryFailsInTransaction() throws Exception {
+        int numberOfAds = batchSize + 10;
+        int failingIndex = batchSize + 5;
+
+        String result = addAds(numberOfAds, failingIndex);
+
+        List<Integer> firstBatchIds = JsonPath.read(result, "$.results[0:" + batchSize + "].ad.pk");
+        List<Integer> retriedIds = JsonPath.read(result, "$.results[" + batchSize + ":].ad.pk");
+        assertEquals(batchSize, firstBatchIds.size(), "The first batch should be created");
+        assertEquals(numberOfAds - batchSize - 1, retriedIds.size(), "Every other entry of the failed batch should be created");
+        assertEquals("Unsupported image type: text/plain",
+                JsonPath.read(result, "$.results[" + failingIndex + "].error"));
+        assertEquals(1, countTransactions(firstBatchIds), "The first batch should be committed in one transaction");
+        assertEquals(retriedIds.size(), countTransactions(retriedIds), "Retried entries should be committed one by one");
+        assertEquals(retriedIds.size(), countChanges(retriedIds), "The rolled back batch should leave no changes behind");
+    }
+
+    /**
+     * Posts valid ads, except that the entry at {@code failingIndex}, if any, has an image that passes the
+     * up-front checks but is rejected once its bytes are read.
+     */
+    private String addAds(int numberOfAds, int failingIndex) throws Exception {
+        TestUtils.getAuthenticationFor(author);
+        List<CreateOrUpdateAd> properties = IntStream.range(0, numberOfAds)
+                .mapToObj(i -> TestUtils.getUpdateForAd())
+                .toList();
+        MockMultipartHttpServletRequestBuilder request = multipart(URL_ADD_ADS);
+        request.file(new MockMultipartFile("properties", "adProperties.json",
+                MediaType.APPLICATION_JSON_VALUE, objectMapper.writeValueAsBytes(properties)));
+        for (int i = 0; i < numberOfAds; i++) {
+            byte[] image = i == failingIndex
+                    ? "not an image".getBytes(StandardCharsets.UTF_8)
+                    : TestUtils.generateRandomImageBytes();
+            request.file(new MockMultipartFile("images", "image.png", MediaType.IMAGE_PNG_VALUE, image));
+        }
+
+        return mockMvc.perform(request)
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.created").value(failingIndex < 0 ? numberOfAds : numberOfAds - 1)
+                )
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    private int countChanges(List<Integer> adIds) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ad_change WHERE ad_id = ANY(?)",
+                Integer.class, (Object) adIds.toArray(Integer[]::new));
+    }
+
+    private int countTransactions(List<Integer> adIds) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT txid) FROM ad_change WHERE ad_id = ANY(?)",
+                Integer.class, (Object) adIds.toArray(Integer[]::new));
+    }
+}
@@ -2,13 +2,16 @@ package ru.ads_online.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.skyscreamer.jsonassert.JSONAssert;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.core.Authentication;
@@ -16,7 +19,10 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -25,6 +31,7 @@ import ru.ads_online.AdsOnlineApplication;
 import ru.ads_online.controller.utils.TestUtils;
 import ru.ads_online.mapper.AdMapper;
 import ru.ads_online.pojo.dto.ad.Ad;
+import ru.ads_online.pojo.dto.ad.Ads;
 import ru.ads_online.pojo.dto.ad.CreateOrUpdateAd;
 import ru.ads_online.pojo.dto.ad.ExtendedAd;
 import ru.ads_online.pojo.dto.user.Role;
@@ -40,12 +47,25 @@ import ru.ads_online.service.AdService;
 import ru.ads_online.service.ImageService;
 
 import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
-
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.security.test.web.servlet.response.SecurityMockMvcResultMatchers.authenticated;
@@ -90,7 +110,12 @@ public class AdControllerTest {
     private final static int NUMBER_OF_TEST_COMMENTS = NUMBER_OF_TEST_ADS * 10;
     private final static String URL_GET_ALL_ADS = "/ads";
     private final static String URL_ADD_AD = "/ads";
+    private final static String URL_ADD_ADS = "/ads/bulk";
+    private final static String URL_SEARCH_ADS = "/ads/search";
+    private final static String URL_GET_CHANGES = "/ads/changes";
+    private final static String URL_SUGGEST_TITLES = "/ads/suggest";
     private final static String URL_GET_AD = "/ads/{id}";
+    private final static String URL_GET_AD_BATCH = "/ads/batch";
     private final static String URL_DELETE_AD = "/ads/{id}";
     private final static String URL_UPDATE_AD = "/ads/{id}";
     private final static String URL_GET_ADS = "/ads/me";
@@ -143,7 +168,7 @@ public class AdControllerTest {
     void getAllAds_shouldReturnAds_whenRequestFromAuthorizedUser() throws Exception {
         Authentication authentication = TestUtils.getRandomUserAuthentication(predefinedUsers);
         ads = adRepository.findAll();
-        String expectedJSON = objectMapper.writeValueAsString(adMapper.toAds(ads));
+        String expectedJSON = objectMapper.writeValueAsString(toAds(ads));
 
         mockMvc.perform(get(URL_GET_ALL_ADS))
                 .andExpectAll(
@@ -157,7 +182,7 @@ public class AdControllerTest {
     @DisplayName("Fetch all ads as an unauthorized user")
     void getAllAds_shouldReturnAds_whenRequestFromUnauthorizedUser() throws Exception {
         ads = adRepository.findAll();
-        String expectedJSON = objectMapper.writeValueAsString(adMapper.toAds(ads));
+        String expectedJSON = objectMapper.writeValueAsString(toAds(ads));
 
         mockMvc.perform(get(URL_GET_ALL_ADS))
                 .andExpectAll(
@@ -167,6 +192,295 @@ public class AdControllerTest {
                 );
     }
 
+    @Test
+    @DisplayName("Fetch all ads gzipped when the client accepts gzip")
+    void getAllAds_shouldReturnGzippedAds_whenGzipAccepted() throws Exception {
+        String expectedJSON = objectMapper.writeValueAsString(toAds(adRepository.findAll()));
+
+        byte[] body = mockMvc.perform(get(URL_GET_ALL_ADS).header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpectAll(
+                        status().isOk(),
+                        header().string(HttpHeaders.CONTENT_ENCODING, "gzip"),
+                        header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                )
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            JSONAssert.assertEquals(expectedJSON, new String(gzipStream.readAllBytes(), StandardCharsets.UTF_8), false);
+        }
+    }
+
+    @Test
+    @DisplayName("Fetch all ads again after an ad was updated")
+    void getAllAds_shouldReturnUpdatedAd_whenAdUpdatedAfterFetch() throws Exception {
+        AdEntity existingAd = TestUtils.getRandomAdFrom(ads);
+        CreateOrUpdateAd updateForAd = TestUtils.getUpdateForAd();
+        getAuthenticationFor(existingAd.getAuthor());
+
+        mockMvc.perform(get(URL_GET_ALL_ADS))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(patch(URL_UPDATE_AD, existingAd.getId())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(updateForAd)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get(URL_GET_ALL_ADS))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.results[?(@.pk == %d)].title", existingAd.getId()).value(updateForAd.getTitle())
+                );
+    }
+
+    @Test
+    @DisplayName("Fetch ads page by page using the returned cursor")
+    void getAllAds_shouldReturnNextPage_whenCursorProvided() throws Exception {
+        List<AdEntity> sortedAds = adRepository.findAll().stream()
+                .sorted(Comparator.comparingInt(AdEntity::getId))
+                .toList();
+        int pageSize = 3;
+
+        String firstPage = mockMvc.perform(get(URL_GET_ALL_ADS).param("limit", String.valueOf(pageSize)))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.count").value(pageSize),
+                        jsonPath("$.results[0].pk").value(sortedAds.getFirst().getId()),
+                        jsonPath("$.next").isNotEmpty()
+                )
+                .andReturn().getResponse().getContentAsString();
+        String next = JsonPath.read(firstPage, "$.next");
+
+        mockMvc.perform(get(URL_GET_ALL_ADS).param("limit", String.valueOf(pageSize)).param("after", next))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.count").value(pageSize),
+                        jsonPath("$.results[0].pk").value(sortedAds.get(pageSize).getId())
+                );
+    }
+
+    @Test
+    @DisplayName("Fetch ads with a malformed cursor")
+    void getAllAds_shouldReturn400_whenCursorIsMalformed() throws Exception {
+        mockMvc.perform(get(URL_GET_ALL_ADS).param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Fetch ads with a cursor issued for another sort")
+    void getAllAds_shouldReturn400_whenCursorIsFromAnotherSort() throws Exception {
+        String page = mockMvc.perform(get(URL_GET_ALL_ADS).param("sort", "price").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String next = JsonPath.read(page, "$.next");
+
+        mockMvc.perform(get(URL_GET_ALL_ADS).param("sort", "newest").param("after", next))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Fetch ads ordered by price across pages")
+    void getAllAds_shouldReturnAdsOrderedByPrice_whenSortByPrice() throws Exception {
+        List<Integer> expectedPrices = adRepository.findAll().stream()
+                .map(AdEntity::getPrice)
+                .sorted()
+                .toList();
+        List<Integer> actualPrices = new ArrayList<>();
+        String next = null;
+
+        do {
+            MockHttpServletRequestBuilder request = get(URL_GET_ALL_ADS).param("sort", "price").param("limit", "4");
+            if (next != null) {
+                request.param("after", next);
+            }
+            String page = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            actualPrices.addAll(JsonPath.read(page, "$.results[*].price"));
+            next = JsonPath.read(page, "$.next");
+        } while (next != null);
+
+        assertEquals(expectedPrices, actualPrices, "Ads should be returned once each, cheapest first");
+    }
+
+    @Test
+    @DisplayName("Fetch the newest ads first")
+    void getAllAds_shouldReturnNewestAdsFirst_whenSortByNewest() throws Exception {
+        List<Integer> expectedIds = adRepository.findAll().stream()
+                .sorted(Comparator.comparingLong(AdEntity::getCreatedAt)
+                        .thenComparingInt(AdEntity::getId)
+                        .reversed())
+                .map(AdEntity::getId)
+                .limit(5)
+                .toList();
+
+        String page = mockMvc.perform(get(URL_GET_ALL_ADS).param("sort", "newest").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(expectedIds, JsonPath.read(page, "$.results[*].pk"), "Ads should be ordered by creation time, newest first");
+    }
+
+    @Test
+    @DisplayName("Fetch ads of one author within a price range")
+    void getAllAds_shouldReturnMatchingAds_whenFiltered() throws Exception {
+        AdEntity ad = getRandomAdFrom(ads);
+
+        mockMvc.perform(get(URL_GET_ALL_ADS)
+                        .param("authorId", String.valueOf(ad.getAuthor().getId()))
+                        .param("minPrice", String.valueOf(ad.getPrice()))
+                        .param("maxPrice", String.valueOf(ad.getPrice())))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.results[*].pk", hasItem(ad.getId())),
+                        jsonPath("$.results[*].author", everyItem(is(ad.getAuthor().getId()))),
+                        jsonPath("$.results[*].price", everyItem(is(ad.getPrice())))
+                );
+    }
+
+    @Test
+    @DisplayName("Fetch ads with an unknown sort")
+    void getAllAds_shouldReturn400_whenSortIsUnknown() throws Exception {
+        mockMvc.perform(get(URL_GET_ALL_ADS).param("sort", "title"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Stream all ads as newline-delimited JSON")
+    void streamAllAds_shouldWriteOneLinePerAd_whenNdjsonRequested() throws Exception {
+        MvcResult asyncResult = mockMvc.perform(get(URL_GET_ALL_ADS).accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(asyncResult))
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                )
+                .andReturn().getResponse().getContentAsString();
+
+        List<Ad> streamedAds = body.lines()
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, Ad.class);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+        assertEquals(adRepository.count(), streamedAds.size(), "Every ad should be streamed exactly once");
+    }
+
+    @Test
+    @DisplayName("Fetch ads changed since a watermark")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void getChanges_shouldReturnUpdatedAndDeletedAds_whenChangedAfterWatermark() throws Exception {
+        // Changes are only served once committed, so this test commits its own ads instead of changing shared ones
+        List<AdEntity> committedAds = adRepository.saveAll(TestUtils.createAds(2, predefinedUsers, imageService));
+        AdEntity updatedAd = committedAds.get(0);
+        AdEntity deletedAd = committedAds.get(1);
+        String initialChanges = mockMvc.perform(get(URL_GET_CHANGES))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        long watermark = ((Number) JsonPath.read(initialChanges, "$.watermark")).longValue();
+
+        getAuthenticationFor(updatedAd.getAuthor());
+        mockMvc.perform(patch(URL_UPDATE_AD, updatedAd.getId())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(TestUtils.getUpdateForAd())))
+                .andExpect(status().isOk());
+        getAuthenticationFor(predefinedAdmin);
+        mockMvc.perform(delete(URL_DELETE_AD, deletedAd.getId()))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get(URL_GET_CHANGES).param("since", String.valueOf(watermark)))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.updated[*].pk", contains(updatedAd.getId())),
+                        jsonPath("$.deleted", contains(deletedAd.getId())),
+                        jsonPath("$.hasMore").value(false),
+                        jsonPath("$.resync").value(false)
+                );
+
+        mockMvc.perform(delete(URL_DELETE_AD, updatedAd.getId()))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    @DisplayName("Fetch ad changes from before the retained ones")
+    void getChanges_shouldRequestResync_whenChangesSinceWatermarkArePruned() throws Exception {
+        mockMvc.perform(get(URL_GET_CHANGES).param("since", "0"))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.resync").value(true),
+                        jsonPath("$.updated").isEmpty(),
+                        jsonPath("$.deleted").isEmpty(),
+                        jsonPath("$.watermark").value(greaterThan(0))
+                );
+    }
+
+    @Test
+    @DisplayName("Search ads by the words of a title")
+    void searchAds_shouldReturnMatchingAd_whenQueryMatchesTitle() throws Exception {
+        AdEntity ad = getRandomAdFrom(ads);
+
+        mockMvc.perform(get(URL_SEARCH_ADS).param("q", ad.getTitle()))
+                .andExpectAll(
+                        unauthenticated(),
+                        status().isOk(),
+                        jsonPath("$.results[*].pk", hasItem(ad.getId())),
+                        jsonPath("$.priceRanges.length()").value(AdRepository.PRICE_BUCKET_BOUNDS.size() + 1)
+                );
+    }
+
+    @Test
+    @DisplayName("Search ads outside of the requested price range")
+    void searchAds_shouldNotReturnAd_whenPriceIsOutsideRange() throws Exception {
+        AdEntity ad = getRandomAdFrom(ads);
+
+        mockMvc.perform(get(URL_SEARCH_ADS)
+                        .param("q", ad.getTitle())
+                        .param("minPrice", String.valueOf(ad.getPrice() + 1)))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.results[*].pk", not(hasItem(ad.getId())))
+                );
+    }
+
+    @Test
+    @DisplayName("Search ads on a page far beyond the results")
+    void searchAds_shouldReturnEmptyPage_whenPageIsBeyondResults() throws Exception {
+        AdEntity ad = getRandomAdFrom(ads);
+
+        mockMvc.perform(get(URL_SEARCH_ADS)
+                        .param("q", ad.getTitle())
+                        .param("page", String.valueOf(Integer.MAX_VALUE))
+                        .param("size", "100"))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.results").isEmpty()
+                );
+    }
+
+    @Test
+    @DisplayName("Search ads with a blank query")
+    void searchAds_shouldReturn400_whenQueryIsBlank() throws Exception {
+        mockMvc.perform(get(URL_SEARCH_ADS).param("q", " "))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Suggest titles for a typed title")
+    void suggestTitles_shouldReturnTitle_whenQueryMatchesTitle() throws Exception {
+        AdEntity ad = getRandomAdFrom(ads);
+
+        mockMvc.perform(get(URL_SUGGEST_TITLES).param("q", ad.getTitle()))
+                .andExpectAll(
+                        unauthenticated(),
+                        status().isOk(),
+                        jsonPath("$", hasItem(ad.getTitle()))
+                );
+    }
+
     @Test
     @DisplayName("Add ad by authorised user")
     void addAd_shouldTReturn201AndAd_whenAdSuccessfullyCreated() throws Exception {
@@ -196,6 +510,68 @@ public class AdControllerTest {
                 "Ad count should be increased by one after an authorized request.");
     }
 
+    @Test
+    @DisplayName("Add many ads at once, some of them invalid, by authorised user")
+    void addAds_shouldCreateValidAdsAndReportInvalidOnes_whenSomeEntriesAreInvalid() throws Exception {
+        Authentication authentication = TestUtils.getRandomUserAuthentication(predefinedUsers);
+        CreateOrUpdateAd validAd = TestUtils.getUpdateForAd();
+        CreateOrUpdateAd adWithShortTitle = TestUtils.getUpdateForAd().setTitle("ab");
+        CreateOrUpdateAd adWithWrongImage = TestUtils.getUpdateForAd();
+        CreateOrUpdateAd adWithoutImage = TestUtils.getUpdateForAd();
+        String adsJson = objectMapper.writeValueAsString(List.of(validAd, adWithShortTitle, adWithWrongImage, adWithoutImage));
+        long adNumberBeforeRequest = adRepository.count();
+
+        MockMultipartFile adProperties = new MockMultipartFile(
+                "properties", "adProperties.json",
+                MediaType.APPLICATION_JSON_VALUE, adsJson.getBytes());
+        MockMultipartFile pngImage = new MockMultipartFile(
+                "images", "image.png",
+                MediaType.IMAGE_PNG_VALUE, TestUtils.generateRandomImageBytes());
+        MockMultipartFile textImage = new MockMultipartFile(
+                "images", "image.png",
+                MediaType.TEXT_PLAIN_VALUE, TestUtils.generateRandomImageBytes());
+        mockMvc.perform(multipart(URL_ADD_ADS).file(adProperties).file(pngImage).file(pngImage).file(textImage))
+                .andExpectAll(
+                        status().isOk(),
+                        authenticated().withAuthenticationName(authentication.getName()),
+                        jsonPath("$.created").value(1),
+                        jsonPath("$.failed").value(3),
+                        jsonPath("$.results[*].index").value(contains(0, 1, 2, 3)),
+                        jsonPath("$.results[0].ad.title").value(validAd.getTitle()),
+                        jsonPath("$.results[0].ad.pk").exists(),
+                        jsonPath("$.results[0].error").doesNotExist(),
+                        jsonPath("$.results[1].ad").doesNotExist(),
+                        jsonPath("$.results[1].error").value(containsString("title")),
+                        jsonPath("$.results[2].error").value("Wrong mime type"),
+                        jsonPath("$.results[3].error").value("No image provided")
+                );
+
+        assertEquals(adNumberBeforeRequest + 1, adRepository.count(),
+                "Only the valid ad should be created.");
+    }
+
+    @Test
+    @DisplayName("Add many ads at once by unauthorised user")
+    void addAds_shouldReturn401_whenUnauthorizedUser() throws Exception {
+        String adsJson = objectMapper.writeValueAsString(List.of(TestUtils.getUpdateForAd()));
+        long adNumberBeforeRequest = adRepository.count();
+
+        MockMultipartFile adProperties = new MockMultipartFile(
+                "properties", "adProperties.json",
+                MediaType.APPLICATION_JSON_VALUE, adsJson.getBytes());
+        MockMultipartFile adImage = new MockMultipartFile(
+                "images", "image.png",
+                MediaType.IMAGE_PNG_VALUE, TestUtils.generateRandomImageBytes());
+        mockMvc.perform(multipart(URL_ADD_ADS).file(adProperties).file(adImage))
+                .andExpectAll(
+                        unauthenticated(),
+                        status().isUnauthorized()
+                );
+
+        assertEquals(adNumberBeforeRequest, adRepository.count(),
+                "Ad count should remain unchanged after an unauthorized request.");
+    }
+
     @ParameterizedTest(name = "{1}")
     @MethodSource("getInvalidImages")
     @DisplayName("Add ad with invalid image as an unauthorized user")
@@ -223,12 +599,17 @@ public class AdControllerTest {
 
         MockMultipartFile mockImageExceedingMaxSize = new MockMultipartFile(
                 "image", "largeImage.png",
-                MediaType.IMAGE_PNG_VALUE, new byte[10_485_761]);
+                MediaType.IMAGE_PNG_VALUE, TestUtils.generateRandomImageBytes(10_485_761));
+
+        MockMultipartFile mockImageWithWrongContent = new MockMultipartFile(
+                "image", "image.png",
+                MediaType.IMAGE_PNG_VALUE, "not an image".getBytes());
 
         return Stream.of(
                 Arguments.of(null, "Image is null"),
                 Arguments.of(mockImageWithWrongMime, "Invalid MIME type"),
-                Arguments.of(mockImageExceedingMaxSize, "Image exceeds max size")
+                Arguments.of(mockImageExceedingMaxSize, "Image exceeds max size"),
+                Arguments.of(mockImageWithWrongContent, "Image content is not an image")
         );
     }
 
@@ -362,7 +743,7 @@ public class AdControllerTest {
         Authentication authentication = TestUtils.getRandomUserAuthentication(predefinedUsers);
 
         AdEntity ad = TestUtils.getRandomAdFrom(ads);
-        ExtendedAd extendedAd = adMapper.toExtendedAd(ad);
+        ExtendedAd extendedAd = toExtendedAd(ad);
         String extendedAdJson = objectMapper.writeValueAsString(extendedAd);
 
         mockMvc.perform(get(URL_GET_AD, ad.getId()))
@@ -413,6 +794,121 @@ public class AdControllerTest {
                 );
     }
 
+    @Test
+    @DisplayName("Fetch unchanged ad again with its ETag")
+    void getAd_shouldReturn304_whenETagMatches() throws Exception {
+        AdEntity ad = TestUtils.getRandomAdFrom(ads);
+        TestUtils.getRandomUserAuthentication(predefinedUsers);
+
+        String eTag = mockMvc.perform(get(URL_GET_AD, ad.getId()))
+                .andExpectAll(
+                        status().isOk(),
+                        header().exists(HttpHeaders.ETAG)
+                )
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(URL_GET_AD, ad.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("Fetch filtered ads again with their ETag after an ad was updated")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void getAllAds_shouldReturnNewETag_whenAdUpdatedAfterFetch() throws Exception {
+        // The version only moves once the change is committed, so this test commits its own ad
+        AdEntity ad = adRepository.saveAll(TestUtils.createAds(1, predefinedUsers, imageService)).getFirst();
+        String eTag = mockMvc.perform(get(URL_GET_ALL_ADS).param("sort", "newest"))
+                .andExpectAll(
+                        status().isOk(),
+                        header().exists(HttpHeaders.ETAG)
+                )
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get(URL_GET_ALL_ADS).param("sort", "newest").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        getAuthenticationFor(ad.getAuthor());
+        mockMvc.perform(patch(URL_UPDATE_AD, ad.getId())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(TestUtils.getUpdateForAd())))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get(URL_GET_ALL_ADS).param("sort", "newest").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpectAll(
+                        status().isOk(),
+                        header().string(HttpHeaders.ETAG, not(eTag))
+                );
+
+        mockMvc.perform(delete(URL_DELETE_AD, ad.getId()))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    @DisplayName("Fetch ad again after it was updated")
+    void getAd_shouldReturnUpdatedAd_whenAdUpdatedAfterFetch() throws Exception {
+        AdEntity existingAd = TestUtils.getRandomAdFrom(ads);
+        CreateOrUpdateAd updateForAd = TestUtils.getUpdateForAd();
+        Authentication authentication = TestUtils.getAuthenticationFor(existingAd.getAuthor());
+
+        mockMvc.perform(get(URL_GET_AD, existingAd.getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(patch(URL_UPDATE_AD, existingAd.getId())
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(updateForAd)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get(URL_GET_AD, existingAd.getId()))
+                .andExpectAll(
+                        authenticated().withAuthenticationName(authentication.getName()),
+                        jsonPath("$.title").value(updateForAd.getTitle()),
+                        jsonPath("$.price").value(updateForAd.getPrice()),
+                        status().isOk()
+                );
+    }
+
+    @Test
+    @DisplayName("Fetch several ads at once as authorised user")
+    void getAdBatch_shouldReturnAdsInRequestOrderAndMissingIds_whenSomeAdsDoNotExist() throws Exception {
+        Authentication authentication = TestUtils.getRandomUserAuthentication(predefinedUsers);
+        AdEntity firstAd = ads.get(0);
+        AdEntity secondAd = ads.get(1);
+        int nonExistentId = TestUtils.getRandomNonExistentId(adRepository);
+
+        // Fetch one ad alone first so the batch combines a cached ad with ads read from the database
+        mockMvc.perform(get(URL_GET_AD, firstAd.getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get(URL_GET_AD_BATCH)
+                        .param("ids", String.format("%d,%d,%d,%d", secondAd.getId(), nonExistentId, firstAd.getId(), secondAd.getId())))
+                .andExpectAll(
+                        authenticated().withAuthenticationName(authentication.getName()),
+                        status().isOk(),
+                        jsonPath("$.count").value(2),
+                        jsonPath("$.results[*].pk").value(contains(secondAd.getId(), firstAd.getId())),
+                        jsonPath("$.results[1].title").value(firstAd.getTitle()),
+                        jsonPath("$.results[0].email").value(secondAd.getAuthor().getUsername()),
+                        jsonPath("$.missing[*]").value(contains(nonExistentId))
+                );
+    }
+
+    @ParameterizedTest(name = "{1}")
+    @MethodSource("getInvalidBatchIds")
+    @DisplayName("Fetch several ads with invalid ids as authorised user")
+    void getAdBatch_shouldReturn400_whenInvalidIds(String ids, String caseName) throws Exception {
+        TestUtils.getRandomUserAuthentication(predefinedUsers);
+
+        mockMvc.perform(get(URL_GET_AD_BATCH).param("ids", ids))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Fetch several ads as an unauthorised user")
+    void getAdBatch_shouldReturn401_whenUnauthorizedUser() throws Exception {
+        mockMvc.perform(get(URL_GET_AD_BATCH).param("ids", String.valueOf(ads.get(0).getId())))
+                .andExpectAll(unauthenticated(),
+                        status().isUnauthorized());
+    }
+
     @Test
     @DisplayName("Delete ad by authorized owner")
     void deleteAd_shouldTReturn204_whenAdSuccessfullyDeletedByUser() throws Exception {
@@ -663,7 +1159,7 @@ public class AdControllerTest {
         List<AdEntity> userAds = ads.stream()
                 .filter(ad -> Objects.equals(ad.getAuthor(), user))
                 .collect(Collectors.toList());
-        String expectedJson = objectMapper.writeValueAsString(adMapper.toAds(userAds));
+        String expectedJson = objectMapper.writeValueAsString(toAds(userAds));
 
         mockMvc.perform(get(URL_GET_ADS))
                 .andExpectAll(
@@ -673,6 +1169,38 @@ public class AdControllerTest {
                 );
     }
 
+    @Test
+    @DisplayName("Fetch own ads page by page using the returned cursor")
+    void getAds_shouldReturnAllOwnAdsOnePerPage_whenCursorFollowed() throws Exception {
+        UserEntity user = getRandomAdFrom(ads).getAuthor();
+        TestUtils.getAuthenticationFor(user);
+        List<Integer> expectedIds = ads.stream()
+                .filter(ad -> Objects.equals(ad.getAuthor(), user))
+                .map(AdEntity::getId)
+                .sorted()
+                .toList();
+
+        List<Integer> fetchedIds = new ArrayList<>();
+        String next = null;
+        do {
+            MockHttpServletRequestBuilder request = get(URL_GET_ADS).param("limit", "1");
+            if (next != null) {
+                request.param("after", next);
+            }
+            String page = mockMvc.perform(request)
+                    .andExpectAll(
+                            status().isOk(),
+                            jsonPath("$.count").value(1),
+                            jsonPath("$.results[0].author").value(user.getId())
+                    )
+                    .andReturn().getResponse().getContentAsString();
+            fetchedIds.add(JsonPath.read(page, "$.results[0].pk"));
+            next = JsonPath.read(page, "$.next");
+        } while (next != null);
+
+        assertEquals(expectedIds, fetchedIds, "Every own ad should be returned once, in ID order");
+    }
+
     @Test
     @DisplayName("Fetch ads of unauthorised user")
     void getAds_shouldTReturn401_whenUnauthorizedUser() throws Exception {
@@ -807,4 +1335,35 @@ public class AdControllerTest {
                 Arguments.of("t7", "id contains character")
         );
     }
-}
\ No newline at end of file
+
+    static Stream<Arguments> getInvalidBatchIds() {
+        String tooManyIds = IntStream.rangeClosed(1, 101)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+        return Stream.of(
+                Arguments.of("", "ids are empty"),
+                Arguments.of("1,-1", "id is negative"),
+                Arguments.of("1,t7", "id contains character"),
+                Arguments.of(tooManyIds, "too many ids")
+        );
+    }
+
+    private Ads toAds(List<AdEntity> adEntities) {
+        return adMapper.toAds(adEntities.stream()
+                .map(adMapper::toAd)
+                .toList());
+    }
+
+    private static ExtendedAd toExtendedAd(AdEntity adEntity) {
+        return new ExtendedAd()
+                .setPk(adEntity.getId())
+                .setAuthorFirstName(adEntity.getAuthor().getFirstName())
+                .setAuthorLastName(adEntity.getAuthor().getLastName())
+                .setDescription(adEntity.getDescription())
+                .setEmail(adEntity.getAuthor().getUsername())
+                .setImage(adEntity.getImage())
+                .setPhone(adEntity.getAuthor().getPhone())
+                .setPrice(adEntity.getPrice())
+                .setTitle(adEntity.getTitle());
+    }
+}
@@ -1,6 +1,7 @@
 package ru.ads_online.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -8,7 +9,9 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.DynamicPropertyRegistry;
@@ -36,6 +39,7 @@ import javax.sql.DataSource;
 import java.util.List;
 import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.hasItem;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.security.test.web.servlet.response.SecurityMockMvcResultMatchers.authenticated;
@@ -138,6 +142,57 @@ public class CommentControllerTest {
                 );
     }
 
+    @Test
+    @DisplayName("Fetch unchanged comments again with their ETag")
+    void getAllCommentsForAd_shouldReturn304UntilCommentAdded_whenETagMatches() throws Exception {
+        AdEntity ad = TestUtils.getRandomAdFrom(ads);
+        TestUtils.getAuthenticationFor(ad.getAuthor());
+
+        String eTag = mockMvc.perform(get(URL_GET_COMMENTS, ad.getId()))
+                .andExpectAll(
+                        status().isOk(),
+                        header().exists(HttpHeaders.ETAG)
+                )
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(URL_GET_COMMENTS, ad.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        CreateOrUpdateComment comment = new CreateOrUpdateComment().setText(TestUtils.getCommentsText(10, 1).get(0));
+        mockMvc.perform(post(URL_POST_COMMENT, ad.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(comment)))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get(URL_GET_COMMENTS, ad.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.results[*].text", hasItem(comment.getText()))
+                );
+    }
+
+    @Test
+    @DisplayName("Comments ETag changes when a comment is replaced by one with a lower ID")
+    void getAllCommentsForAd_shouldReturnNewETag_whenReplacedCommentGetsLowerId() throws Exception {
+        AdEntity ad = TestUtils.getRandomAdFrom(ads);
+        TestUtils.getAuthenticationFor(ad.getAuthor());
+        int deletedId = postComment(ad);
+        postComment(ad);
+        String eTag = mockMvc.perform(get(URL_GET_COMMENTS, ad.getId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(delete(URL_DELETE_COMMENT, ad.getId(), deletedId))
+                .andExpect(status().isNoContent());
+        int addedId = postComment(ad);
+        commentRepository.flush();
+        // As if drawn from another node's block of IDs: count, highest ID and versions are all as before
+        new JdbcTemplate(dataSource).update("UPDATE comment SET id = ? WHERE id = ?", deletedId, addedId);
+
+        mockMvc.perform(get(URL_GET_COMMENTS, ad.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
     @ParameterizedTest(name = "{1}")
     @MethodSource("getInvalidId")
     @DisplayName("Fetch all comments for invalid adId as an authorized user")
@@ -548,4 +603,14 @@ public class CommentControllerTest {
                 Arguments.of("t7", "id contains character")
         );
     }
-}
\ No newline at end of file
+
+    private int postComment(AdEntity ad) throws Exception {
+        CreateOrUpdateComment comment = new CreateOrUpdateComment().setText(TestUtils.getCommentsText(10, 1).get(0));
+        String result = mockMvc.perform(post(URL_POST_COMMENT, ad.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(comment)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(result, "$.pk");
+    }
+}
@@ -0,0 +1,159 @@
+package ru.ads_online.controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.ads_online.AdsOnlineApplication;
+import ru.ads_online.controller.utils.TestUtils;
+import ru.ads_online.pojo.entity.ImageEntity;
+import ru.ads_online.repository.ImageRepository;
+import ru.ads_online.service.ImageService;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(classes = AdsOnlineApplication.class)
+@Testcontainers
+@Transactional
+@AutoConfigureMockMvc
+public class ImageControllerTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:alpine");
+    private final static String URL_GET_IMAGE = "/images/{id}";
+    @Autowired
+    private ImageService imageService;
+    @Autowired
+    private ImageRepository imageRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Test
+    @DisplayName("Fetch whole image")
+    void getImage_shouldReturnImageWithLength_whenImageExists() throws Exception {
+        byte[] image = TestUtils.generateRandomImageBytes(1000);
+        ImageEntity imageEntity = imageService.uploadImage(new ByteArrayInputStream(image));
+
+        mockMvc.perform(get(URL_GET_IMAGE, imageEntity.getId()))
+                .andExpectAll(
+                        status().isOk(),
+                        header().longValue(HttpHeaders.CONTENT_LENGTH, image.length),
+                        header().string(HttpHeaders.ACCEPT_RANGES, "bytes"),
+                        content().bytes(image)
+                );
+    }
+
+    @Test
+    @DisplayName("Fetch image with the type detected at upload")
+    void getImage_shouldReturnStoredContentTypeAndETag_whenImageExists() throws Exception {
+        byte[] image = pngImage();
+        ImageEntity imageEntity = imageService.uploadImage(new ByteArrayInputStream(image));
+        assertEquals(MediaType.IMAGE_PNG_VALUE, imageEntity.getContentType());
+        assertEquals((long) image.length, imageEntity.getSize());
+
+        String eTag = mockMvc.perform(get(URL_GET_IMAGE, imageEntity.getId()))
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentType(MediaType.IMAGE_PNG),
+                        header().string(HttpHeaders.ETAG, "\"" + imageEntity.getStorageKey() + "\"")
+                )
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(URL_GET_IMAGE, imageEntity.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("Identical uploads share one stored copy that outlives deleting one of them")
+    void getImage_shouldReturnSharedImage_whenIdenticalUploadDeleted() throws Exception {
+        byte[] image = TestUtils.generateRandomImageBytes(1000);
+        ImageEntity firstImage = imageService.uploadImage(new ByteArrayInputStream(image));
+        ImageEntity secondImage = imageService.uploadImage(new ByteArrayInputStream(image));
+        assertEquals(firstImage.getStorageKey(), secondImage.getStorageKey());
+        assertEquals(2, getRefCount(firstImage.getStorageKey()));
+
+        imageService.deleteImage(firstImage.getId());
+
+        assertEquals(1, getRefCount(secondImage.getStorageKey()));
+        mockMvc.perform(get(URL_GET_IMAGE, secondImage.getId()))
+                .andExpectAll(
+                        status().isOk(),
+                        content().bytes(image)
+                );
+    }
+
+    @Test
+    @DisplayName("Fetch a byte range of an image")
+    void getImage_shouldReturn206WithRange_whenRangeRequested() throws Exception {
+        byte[] image = TestUtils.generateRandomImageBytes(1000);
+        ImageEntity imageEntity = imageService.uploadImage(new ByteArrayInputStream(image));
+
+        mockMvc.perform(get(URL_GET_IMAGE, imageEntity.getId()).header(HttpHeaders.RANGE, "bytes=100-199"))
+                .andExpectAll(
+                        status().isPartialContent(),
+                        header().string(HttpHeaders.CONTENT_RANGE, "bytes 100-199/1000"),
+                        header().longValue(HttpHeaders.CONTENT_LENGTH, 100),
+                        content().bytes(Arrays.copyOfRange(image, 100, 200))
+                );
+    }
+
+    @Test
+    @DisplayName("Fetch a byte range beyond the end of an image")
+    void getImage_shouldReturn416_whenRangeIsNotSatisfiable() throws Exception {
+        ImageEntity imageEntity = imageService.uploadImage(new ByteArrayInputStream(TestUtils.generateRandomImageBytes(1000)));
+
+        mockMvc.perform(get(URL_GET_IMAGE, imageEntity.getId()).header(HttpHeaders.RANGE, "bytes=2000-2999"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    @DisplayName("Fetch non-existent image")
+    void getImage_shouldReturn404_whenImageDoesNotExist() throws Exception {
+        int nonExistentId = Integer.MAX_VALUE;
+        assertFalse(imageRepository.existsById(nonExistentId));
+
+        mockMvc.perform(get(URL_GET_IMAGE, nonExistentId))
+                .andExpect(status().isNotFound());
+    }
+
+    private int getRefCount(String storageKey) {
+        return jdbcTemplate.queryForObject("SELECT ref_count FROM image_blob WHERE storage_key = ?",
+                Integer.class, storageKey);
+    }
+
+    private static byte[] pngImage() throws IOException {
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "png", image);
+        return image.toByteArray();
+    }
+
+}
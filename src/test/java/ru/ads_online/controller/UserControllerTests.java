@@ -8,6 +8,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.core.Authentication;
@@ -48,6 +49,8 @@ public class UserControllerTests {
     @Autowired
     private ImageRepository imageRepository;
     @Autowired
+    private ImageService imageService;
+    @Autowired
     private MockMvc mockMvc;
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -219,6 +222,20 @@ public class UserControllerTests {
                         jsonPath("$.image").value(user.getImage()));
     }
 
+    @Test
+    @DisplayName("Fetch unchanged user data again with its ETag")
+    void getData_shouldReturn304_whenETagMatches() throws Exception {
+        UserEntity user = TestUtils.getRandomUserFrom(predefinedUsers);
+        TestUtils.getAuthenticationFor(user);
+
+        String eTag = mockMvc.perform(get(URL_GET_DATA))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(URL_GET_DATA).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+
     @Test
     @DisplayName("Fetch user information as an authorized admin")
     void getData_shouldReturn200AndUser_whenRequestFromAuthorizedAdmin() throws Exception {
@@ -321,6 +338,32 @@ public class UserControllerTests {
                         jsonPath("$.phone").value(phone));
     }
 
+    @Test
+    @DisplayName("Update information of a user changed since the request was authenticated")
+    void updateData_shouldReturn200_whenAuthenticatedUserIsOutdated() throws Exception {
+        UserEntity user = TestUtils.getRandomUserFrom(predefinedUsers);
+        UserEntity outdatedUser = new UserEntity()
+                .setId(user.getId())
+                .setUsername(user.getUsername())
+                .setPassword(user.getPassword())
+                .setFirstName(user.getFirstName())
+                .setLastName(user.getLastName())
+                .setPhone(user.getPhone())
+                .setRole(user.getRole())
+                .setImage(user.getImage())
+                .setVersion(user.getVersion() - 1);
+        TestUtils.getAuthenticationFor(outdatedUser);
+
+        String firstName = TestUtils.getFirstNames(1).getFirst();
+        JSONObject newUpdateUserDto = TestUtils.createNewUpdateUserDto(firstName, user.getLastName(), user.getPhone());
+
+        mockMvc.perform(patch(URL_UPDATE_DATA)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(newUpdateUserDto.toString()))
+                .andExpectAll(status().isOk(),
+                        jsonPath("$.firstName").value(firstName));
+    }
+
     @Test
     @DisplayName("Update information about by non-authorized user")
     void updateData_shouldReturn401_whenRequestFromUnauthorizedUser() throws Exception {
@@ -345,7 +388,7 @@ public class UserControllerTests {
         UserEntity user = TestUtils.getRandomUserFrom(predefinedUsers);
         TestUtils.getAuthenticationFor(user);
 
-        MockMultipartFile imageFile = new MockMultipartFile("image", "file1.png", MediaType.IMAGE_PNG_VALUE, "mockImageContent".getBytes());
+        MockMultipartFile imageFile = new MockMultipartFile("image", "file1.png", MediaType.IMAGE_PNG_VALUE, TestUtils.generateRandomImageBytes(1000));
 
         mockMvc.perform(multipart("/users/me/image")
                         .file(imageFile)
@@ -363,13 +406,34 @@ public class UserControllerTests {
         Assertions.assertNotNull(updatedUser.getImage());
 
         Integer imageId = Integer.parseInt(updatedUser.getImage().replaceAll(ImageService.IMAGE_URL_PREFIX, ""));
-        byte[] imageBytesFromDb = imageRepository.findById(imageId)
-                .orElseThrow(() -> new AssertionError("Image not found for ID: " + imageId))
-                .getImage();
+        byte[] imageBytesFromDb = imageService.getImage(imageId).content().getContentAsByteArray();
 
         assertArrayEquals(imageFile.getBytes(), imageBytesFromDb);
     }
 
+    @Test
+    @DisplayName("Profile image update with content that is not an image")
+    void updateImage_shouldReturn400_whenImageContentIsNotAnImage() throws Exception {
+        UserEntity user = TestUtils.getRandomUserFrom(predefinedUsers);
+        TestUtils.getAuthenticationFor(user);
+
+        MockMultipartFile imageFile = new MockMultipartFile("image", "file1.png", MediaType.IMAGE_PNG_VALUE, "mockImageContent".getBytes());
+
+        mockMvc.perform(multipart(URL_PATCH_IMAGE)
+                        .file(imageFile)
+                        .with(request -> {
+                                    request.setMethod("PATCH");
+                                    return request;
+                                }
+                        )
+                )
+                .andExpect(status().isBadRequest());
+
+        UserEntity updatedUser = userRepository.findById(user.getId())
+                .orElseThrow(() -> new AssertionError("User not found for ID: " + user.getId()));
+        Assertions.assertEquals(user.getImage(), updatedUser.getImage());
+    }
+
     @Test
     @DisplayName("Profile image update for an non-authorized user")
     void updateImage_shouldReturn401_whenRequestFromUnauthorizedUser() throws Exception {
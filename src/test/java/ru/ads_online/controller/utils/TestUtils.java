@@ -19,6 +19,7 @@ import ru.ads_online.pojo.entity.UserEntity;
 import ru.ads_online.security.UserPrincipal;
 import ru.ads_online.service.ImageService;
 
+import java.io.ByteArrayInputStream;
 import java.util.*;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -34,9 +35,11 @@ public class TestUtils {
 
     static final int maxPrice = 10000000;
     static final int maxImageSize = 10485760;
+    static final int maxAdAgeMillis = 7 * 24 * 60 * 60 * 1000;
     static final Faker fakerEn = new Faker(Locale.forLanguageTag("en-US"));
     static final Faker fakerRu = new Faker(Locale.forLanguageTag("ru-RU"));
     static final Random random = new Random();
+    static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
 
     public static List<UserEntity> createUniqueUsers(int numberOfUsers, PasswordEncoder passwordEncoder) {
         List<String> emails = getEmails(numberOfUsers);
@@ -112,9 +115,12 @@ public class TestUtils {
         List<String> titles = getTitle(numberOfAds);
         List<String> description = getDescriptions(10, numberOfAds);
         List<String> image = getImage(numberOfAds, imageService);
+        long now = System.currentTimeMillis();
 
         return IntStream.range(0, numberOfAds)
                 .mapToObj(i -> new AdEntity()
+                        .setCreatedAt(now - random.nextInt(maxAdAgeMillis))
+                        .setUpdatedAt(now)
                         .setPrice(random.nextInt(maxPrice))
                         .setTitle(titles.get(i))
                         .setDescription(description.get(i))
@@ -154,15 +160,23 @@ public class TestUtils {
         return IntStream.range(0, quantity)
                 .mapToObj(i -> {
                     byte[] imageBytes = generateRandomImageBytes();
-                    ImageEntity imageEntity = imageService.uploadImage(imageBytes);
+                    ImageEntity imageEntity = imageService.uploadImage(new ByteArrayInputStream(imageBytes));
                     return ImageService.IMAGE_URL_PREFIX + imageEntity.getId();
                 })
                 .toList();
     }
 
     public static byte[] generateRandomImageBytes() {
-        byte[] randomBytes = new byte[Math.max(1, random.nextInt(maxImageSize))];
+        return generateRandomImageBytes(Math.max(PNG_SIGNATURE.length, random.nextInt(maxImageSize)));
+    }
+
+    /**
+     * Random bytes starting with the PNG signature, so they pass as a PNG image on upload.
+     */
+    public static byte[] generateRandomImageBytes(int size) {
+        byte[] randomBytes = new byte[size];
         random.nextBytes(randomBytes);
+        System.arraycopy(PNG_SIGNATURE, 0, randomBytes, 0, PNG_SIGNATURE.length);
         return randomBytes;
     }
 
@@ -0,0 +1,127 @@
+package ru.ads_online.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.ads_online.event.AdChangedEvent;
+import ru.ads_online.pojo.projection.TitleCount;
+import ru.ads_online.repository.AdRepository;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TitleSuggesterTest {
+    private final AdRepository adRepository = mock(AdRepository.class);
+    private TitleSuggester titleSuggester;
+
+    @BeforeEach
+    void setUp() {
+        when(adRepository.countByTitle()).thenReturn(List.of(
+                titleCount("Iphone case", 3),
+                titleCount("Iphone charger", 1),
+                titleCount("Bicycle", 2)));
+        titleSuggester = new TitleSuggester(adRepository);
+    }
+
+    @Test
+    @DisplayName("Titles starting with the text are suggested from memory, most used first")
+    void suggest_shouldReturnPrefixMatchesWithoutQuery_whenFewerThanLimit() {
+        titleSuggester.load();
+
+        assertEquals(List.of("Iphone case", "Iphone charger"), titleSuggester.suggest("ipho", 10));
+        verify(adRepository, never()).findSimilarTitles(anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Misspelled text is completed from memory")
+    void suggest_shouldReturnTitlesOneTypoAway_whenTextIsMisspelled() {
+        titleSuggester.load();
+
+        assertEquals(List.of("Iphone case", "Iphone charger"), titleSuggester.suggest("ipjone", 10));
+        assertEquals(List.of("Bicycle"), titleSuggester.suggest("bciy", 10));
+        verify(adRepository, never()).findSimilarTitles(anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("The database is asked when nothing in memory is close to the text")
+    void suggest_shouldQueryDatabase_whenNoTitleMatches() {
+        when(adRepository.findSimilarTitles("skateboard", 10)).thenReturn(List.of("Skate board"));
+        titleSuggester.load();
+
+        assertEquals(List.of("Skate board"), titleSuggester.suggest("skateboard", 10));
+    }
+
+    @Test
+    @DisplayName("The database is asked until the dictionary is loaded")
+    void suggest_shouldQueryDatabase_whenNotLoaded() {
+        when(adRepository.findSimilarTitles("ipho", 10)).thenReturn(List.of("Iphone case"));
+
+        assertEquals(List.of("Iphone case"), titleSuggester.suggest("ipho", 10));
+    }
+
+    @Test
+    @DisplayName("Loading again keeps the dictionary and its counts")
+    void load_shouldReadTitlesOnce_whenCalledTwice() {
+        titleSuggester.load();
+        titleSuggester.onAdChanged(new AdChangedEvent(1, null, "Iphone charger"));
+        titleSuggester.onAdChanged(new AdChangedEvent(2, null, "Iphone charger"));
+        titleSuggester.onAdChanged(new AdChangedEvent(3, null, "Iphone charger"));
+        titleSuggester.load();
+
+        verify(adRepository, times(1)).countByTitle();
+        assertEquals(List.of("Iphone charger", "Iphone case"), titleSuggester.suggest("iphone", 10));
+    }
+
+    @Test
+    @DisplayName("Typos are completed within the script of the text when titles mix scripts")
+    void suggest_shouldVaryTextInItsOwnScript_whenTitlesMixScripts() {
+        when(adRepository.countByTitle()).thenReturn(List.of(
+                titleCount("Велосипед горный", 2),
+                titleCount("Iphone 15 Pro, 256 GB", 1),
+                titleCount("Кресло-качалка №3", 1),
+                titleCount("Bicycle", 1)));
+        titleSuggester.load();
+
+        assertEquals(List.of("Велосипед горный"), titleSuggester.suggest("велсипед", 10));
+        assertEquals(List.of("Bicycle"), titleSuggester.suggest("bciy", 10));
+        verify(adRepository, never()).findSimilarTitles(anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Typo variants only use characters of the text's script and are capped")
+    void typoVariants_shouldStayInScriptAndCapped_whenAlphabetMixesScripts() {
+        Set<Character> alphabet = new HashSet<>();
+        "abcdefghijklmnopqrstuvwxyzабвгдеёжзийклмнопрстуфхцчшщъыьэюя0123456789 ,.-№!?"
+                .chars().forEach(c -> alphabet.add((char) c));
+
+        Set<String> variants = TitleSuggester.typoVariants("велсипед", alphabet);
+
+        assertTrue(variants.contains("велосипед"));
+        assertTrue(variants.stream().allMatch(variant -> variant.chars()
+                        .allMatch(c -> Character.UnicodeScript.of(c) == Character.UnicodeScript.CYRILLIC)),
+                "Variants of a Cyrillic text should only contain Cyrillic characters");
+        assertTrue(TitleSuggester.typoVariants("велосипед горный с дисковыми тормозами", alphabet).size()
+                <= TitleSuggester.MAX_TYPO_VARIANTS, "Variants of a long text should be capped");
+    }
+
+    private static TitleCount titleCount(String title, long count) {
+        return new TitleCount() {
+            @Override
+            public String getTitle() {
+                return title;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package ru.ads_online.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSystemImageStorageTest {
+    private static final byte[] IMAGE = "image bytes".getBytes(StandardCharsets.UTF_8);
+    private static final String IMAGE_SHA_256 = "de7030234493a8bea844dbe1d8676e68a2c1a4b014c721f0425a22b6df66faec";
+    @TempDir
+    private Path root;
+    private FileSystemImageStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new FileSystemImageStorage(root);
+    }
+
+    @Test
+    @DisplayName("Stored image is read back by its SHA-256 key from a sharded path")
+    void store_shouldKeyImageBySha256_whenStored() throws IOException {
+        String key = storage.store(new ByteArrayInputStream(IMAGE));
+
+        assertEquals(IMAGE_SHA_256, key);
+        assertTrue(Files.exists(root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key)));
+        assertArrayEquals(IMAGE, storage.load(key).getContentAsByteArray());
+    }
+
+    @Test
+    @DisplayName("Storing a stream that exceeds its size limit fails and leaves no files")
+    void store_shouldLeaveNoFiles_whenStreamExceedsSizeLimit() throws IOException {
+        SizeLimitedInputStream data = new SizeLimitedInputStream(new ByteArrayInputStream(IMAGE), IMAGE.length - 1);
+
+        assertThrows(SizeLimitedInputStream.LimitExceededException.class, () -> storage.store(data));
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    @DisplayName("Storing the same bytes twice keeps one file and leaves no temporary files")
+    void store_shouldKeepOneCopy_whenSameBytesStoredTwice() throws IOException {
+        String firstKey = storage.store(new ByteArrayInputStream(IMAGE));
+        String secondKey = storage.store(new ByteArrayInputStream(IMAGE.clone()));
+
+        assertEquals(firstKey, secondKey);
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    @DisplayName("Deleted image can no longer be read")
+    void delete_shouldRemoveImage_whenStored() throws IOException {
+        String key = storage.store(new ByteArrayInputStream(IMAGE));
+
+        storage.delete(key);
+        storage.delete(key);
+
+        assertThrows(FileNotFoundException.class, () -> storage.load(key));
+    }
+
+    @Test
+    @DisplayName("Only images stored before the given time are listed, and storing again counts as storing")
+    void findStoredBefore_shouldListOldImages_whenStoredBeforeTime() throws IOException {
+        String key = storage.store(new ByteArrayInputStream(IMAGE));
+        Path file = root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+        Instant before = Instant.now().minus(Duration.ofHours(1));
+
+        try (Stream<String> keys = storage.findStoredBefore(before)) {
+            assertEquals(List.of(key), keys.toList());
+        }
+        storage.store(new ByteArrayInputStream(IMAGE));
+        try (Stream<String> keys = storage.findStoredBefore(before)) {
+            assertEquals(List.of(), keys.toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Malformed key is rejected instead of resolving outside the root")
+    void read_shouldRejectKey_whenMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> storage.load("../../etc/passwd"));
+    }
+}
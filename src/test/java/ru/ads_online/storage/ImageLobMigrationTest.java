@@ -0,0 +1,142 @@
+package ru.ads_online.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.ads_online.AdsOnlineApplication;
+import ru.ads_online.controller.utils.TestUtils;
+import ru.ads_online.repository.ImageBlobRepository;
+import ru.ads_online.repository.ImageLobRepository;
+import ru.ads_online.service.ImageService;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = AdsOnlineApplication.class, properties = "image.storage.migration.enabled=false")
+@Testcontainers
+public class ImageLobMigrationTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:alpine");
+    // Far above the IDs handed out by the image sequence
+    private static final List<Integer> LEGACY_IMAGE_IDS = List.of(1_000_001, 1_000_002, 1_000_003);
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ImageLobRepository imageLobRepository;
+    @Autowired
+    private ImageBlobRepository imageBlobRepository;
+    @Autowired
+    private ImageStorage imageStorage;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private ImageService imageService;
+    @Autowired
+    private DataSource dataSource;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @AfterEach
+    void tearDown() {
+        LEGACY_IMAGE_IDS.forEach(id -> {
+            jdbcTemplate.queryForList("SELECT lo_unlink(image) FROM image WHERE id = ? AND image IS NOT NULL", id);
+            jdbcTemplate.update("DELETE FROM image WHERE id = ?", id);
+        });
+    }
+
+    @Test
+    @DisplayName("Images kept as large objects are served before and after they are moved to the image storage")
+    void migrateAll_shouldMoveEveryLargeObjectToStorage_whenImagesAreLargeObjects() throws IOException {
+        List<byte[]> images = LEGACY_IMAGE_IDS.stream()
+                .map(id -> insertLegacyImage(id, TestUtils.generateRandomImageBytes()))
+                .toList();
+        List<Long> oids = LEGACY_IMAGE_IDS.stream()
+                .map(id -> jdbcTemplate.queryForObject("SELECT image FROM image WHERE id = ?", Long.class, id))
+                .toList();
+        assertArrayEquals(images.getFirst(), imageService.getImage(LEGACY_IMAGE_IDS.getFirst()).content().getContentAsByteArray());
+
+        ImageLobMigration migration = new ImageLobMigration(imageLobRepository, imageBlobRepository, imageStorage, transactionTemplate, 2);
+
+        assertEquals(LEGACY_IMAGE_IDS.size(), migration.migrateAll());
+        for (int i = 0; i < LEGACY_IMAGE_IDS.size(); i++) {
+            Map<String, Object> row = jdbcTemplate.queryForMap("SELECT image, storage_key, size FROM image WHERE id = ?",
+                    LEGACY_IMAGE_IDS.get(i));
+            assertNull(row.get("image"), "Large object reference should be cleared");
+            assertNotNull(row.get("storage_key"), "Image should point at its stored copy");
+            assertEquals((long) images.get(i).length, row.get("size"), "Image length should be recorded");
+            assertEquals(1, jdbcTemplate.queryForObject("SELECT ref_count FROM image_blob WHERE storage_key = ?",
+                    Integer.class, row.get("storage_key")), "Stored copy should be referenced once");
+            assertEquals(0, jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_largeobject_metadata WHERE oid = ?::oid", Integer.class, oids.get(i)),
+                    "Large object should be unlinked");
+            assertArrayEquals(images.get(i), imageService.getImage(LEGACY_IMAGE_IDS.get(i)).content().getContentAsByteArray());
+        }
+        assertEquals(0, migration.migrateAll(), "Nothing should be left to migrate");
+    }
+
+    @Test
+    @DisplayName("An image updated after it was looked up is left as it was updated")
+    void migrate_shouldSkipImage_whenImageWasUpdatedMeanwhile() {
+        insertLegacyImage(LEGACY_IMAGE_IDS.getFirst(), TestUtils.generateRandomImageBytes());
+        ImageLobRepository.LegacyImage image = imageLobRepository.findUnmigrated(LEGACY_IMAGE_IDS.getFirst() - 1, 1).getFirst();
+        byte[] update = TestUtils.generateRandomImageBytes();
+        imageService.updateImage(image.id(), new ByteArrayInputStream(update));
+
+        ImageLobMigration migration = new ImageLobMigration(imageLobRepository, imageBlobRepository, imageStorage, transactionTemplate, 2);
+
+        assertFalse(migration.migrate(image), "Image should not be migrated");
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT storage_key, size FROM image WHERE id = ?", image.id());
+        assertEquals((long) update.length, row.get("size"), "Image should keep its update");
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT ref_count FROM image_blob WHERE storage_key = ?",
+                Integer.class, row.get("storage_key")), "Stored update should be referenced once");
+    }
+
+    @Test
+    @DisplayName("An image claimed by another node's migration is not copied again")
+    void migrate_shouldSkipImage_whenClaimedByAnotherMigration() throws SQLException {
+        insertLegacyImage(LEGACY_IMAGE_IDS.getFirst(), TestUtils.generateRandomImageBytes());
+        ImageLobRepository.LegacyImage image = imageLobRepository.findUnmigrated(LEGACY_IMAGE_IDS.getFirst() - 1, 1).getFirst();
+        ImageLobMigration migration = new ImageLobMigration(imageLobRepository, imageBlobRepository, imageStorage, transactionTemplate, 2);
+
+        try (Connection otherNode = dataSource.getConnection()) {
+            otherNode.setAutoCommit(false);
+            try (PreparedStatement claim = otherNode.prepareStatement("SELECT pg_advisory_xact_lock('image'::regclass::oid::int, ?)")) {
+                claim.setInt(1, image.id());
+                claim.execute();
+            }
+
+            assertFalse(migration.migrate(image), "Image should be left to the migration that claimed it");
+            assertNull(jdbcTemplate.queryForObject("SELECT storage_key FROM image WHERE id = ?", String.class, image.id()));
+            otherNode.rollback();
+        }
+
+        assertTrue(migration.migrate(image), "Image should be migrated once the claim is released");
+    }
+
+    private byte[] insertLegacyImage(int id, byte[] image) {
+        jdbcTemplate.update("INSERT INTO image (id, image) VALUES (?, lo_from_bytea(0, ?))", id, image);
+        return image;
+    }
+}
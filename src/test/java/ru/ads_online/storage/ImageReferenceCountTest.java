@@ -0,0 +1,122 @@
+package ru.ads_online.storage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.ads_online.AdsOnlineApplication;
+import ru.ads_online.controller.utils.TestUtils;
+import ru.ads_online.pojo.entity.ImageEntity;
+import ru.ads_online.service.ImageService;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * References to stored bytes under concurrent updates, and stored bytes no image refers to, left behind by
+ * uploads that roll back or by failed removals. Not run in a test transaction, so the uploads really commit
+ * or roll back. The sweep sees every file under the storage
+ * root as orphaned once nothing in this database refers to it, so the storage root is not shared with other tests.
+ */
+@SpringBootTest(classes = AdsOnlineApplication.class, properties = {"image.storage.migration.enabled=false",
+        "image.storage.root=target/image-sweep-test", "image.storage.orphan-age=PT0S"})
+@Testcontainers
+public class ImageReferenceCountTest {
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:alpine");
+    @Autowired
+    private ImageService imageService;
+    @Autowired
+    private ImageStorage imageStorage;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @DynamicPropertySource
+    static void postgresProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Test
+    @DisplayName("Bytes stored by an upload that rolls back are deleted again")
+    void uploadImage_shouldDeleteStoredBytes_whenTransactionRollsBack() {
+        String storageKey = transactionTemplate.execute(status -> {
+            ImageEntity image = imageService.uploadImage(new ByteArrayInputStream(TestUtils.generateRandomImageBytes()));
+            status.setRollbackOnly();
+            return image.getStorageKey();
+        });
+
+        assertThrows(FileNotFoundException.class, () -> imageStorage.load(storageKey));
+        assertEquals(0, countBlobRows(storageKey), "No row should be left for the bytes");
+    }
+
+    @Test
+    @DisplayName("The sweep deletes bytes without references and keeps referenced ones")
+    void sweepStorage_shouldDeleteUnreferencedBytes_whenNoImageRefersToThem() throws IOException {
+        String orphanKey = imageStorage.store(new ByteArrayInputStream(TestUtils.generateRandomImageBytes()));
+        String unreferencedKey = imageStorage.store(new ByteArrayInputStream(TestUtils.generateRandomImageBytes()));
+        jdbcTemplate.update("INSERT INTO image_blob (storage_key, ref_count) VALUES (?, 0)", unreferencedKey);
+        ImageEntity image = imageService.uploadImage(new ByteArrayInputStream(TestUtils.generateRandomImageBytes()));
+
+        imageService.sweepStorage();
+
+        assertThrows(FileNotFoundException.class, () -> imageStorage.load(orphanKey), "Bytes without a row should be deleted");
+        assertThrows(FileNotFoundException.class, () -> imageStorage.load(unreferencedKey), "Bytes counted at zero should be deleted");
+        assertEquals(0, countBlobRows(unreferencedKey), "The row counted at zero should be deleted");
+        assertTrue(imageStorage.load(image.getStorageKey()).exists(), "Referenced bytes should be kept");
+        assertEquals(1, countBlobRows(image.getStorageKey()));
+
+        imageService.deleteImage(image.getId());
+    }
+
+    @Test
+    @DisplayName("Concurrent updates swapping the contents of two images neither deadlock nor lose references")
+    void updateImage_shouldKeepCounts_whenConcurrentUpdatesSwapContents() throws Exception {
+        byte[] first = TestUtils.generateRandomImageBytes();
+        byte[] second = TestUtils.generateRandomImageBytes();
+        ImageEntity firstImage = imageService.uploadImage(new ByteArrayInputStream(first));
+        ImageEntity secondImage = imageService.uploadImage(new ByteArrayInputStream(second));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                boolean swapped = i % 2 == 0;
+                Future<?> firstUpdate = executor.submit(() ->
+                        imageService.updateImage(firstImage.getId(), new ByteArrayInputStream(swapped ? second : first)));
+                Future<?> secondUpdate = executor.submit(() ->
+                        imageService.updateImage(secondImage.getId(), new ByteArrayInputStream(swapped ? first : second)));
+                firstUpdate.get();
+                secondUpdate.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT ref_count FROM image_blob WHERE storage_key = ?",
+                Integer.class, firstImage.getStorageKey()));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT ref_count FROM image_blob WHERE storage_key = ?",
+                Integer.class, secondImage.getStorageKey()));
+
+        imageService.deleteImage(firstImage.getId());
+        imageService.deleteImage(secondImage.getId());
+    }
+
+    private int countBlobRows(String storageKey) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM image_blob WHERE storage_key = ?", Integer.class, storageKey);
+    }
+}